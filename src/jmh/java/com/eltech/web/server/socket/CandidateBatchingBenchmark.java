@@ -0,0 +1,75 @@
+package com.eltech.web.server.socket;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Call setups (an offer and a burst of candidates) relayed with and without candidate batching.
+ * frames counter is the count of frames, written to target session, divided by calls it gives frames per call,
+ * cpu per call is compared with -prof gc / -prof stack or as inverse of call throughput.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CandidateBatchingBenchmark {
+    private static final int CANDIDATES_PER_CALL = 24;
+
+    @Param({ "false", "true" })
+    public boolean batching;
+
+    private SignalingStack stack;
+    private SocketHandler socketHandler;
+
+    private StubWebSocketSession caller;
+    private StubWebSocketSession callee;
+    private TextMessage offer;
+    private TextMessage candidate;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class FrameCounters {
+        public long calls;
+        public long frames;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        SignalingProperties properties = SignalingBench.unboundedProperties();
+        properties.getCandidateBatching().setEnabled(batching);
+        properties.getCandidateBatching().setWindowMs(5);
+
+        stack = new SignalingStack(properties);
+        socketHandler = stack.socketHandler;
+
+        caller = new StubWebSocketSession("caller", SignalingBench.uid(1));
+        callee = new StubWebSocketSession("callee", SignalingBench.uid(2));
+        socketHandler.afterConnectionEstablished(caller);
+        socketHandler.afterConnectionEstablished(callee);
+        socketHandler.handleTextMessage(caller, SignalingBench.peerInit(SignalingBench.uid(1)));
+        socketHandler.handleTextMessage(callee, new TextMessage("{\"type\":\"peer_init\",\"payload\":{\"uid\":\"" + SignalingBench.uid(2) + "\",\"batchCandidates\":true}}"));
+
+        offer = SignalingBench.sdp(SignalingBench.uid(1), SignalingBench.uid(2));
+        candidate = SignalingBench.candidate(SignalingBench.uid(1), SignalingBench.uid(2));
+    }
+
+    @TearDown
+    public void tearDown() {
+        stack.shutdown();
+    }
+
+    @Benchmark
+    public void callSetup(FrameCounters counters) {
+        long sentBefore = callee.getSentCount();
+        socketHandler.handleTextMessage(caller, offer);
+        for (int i = 0; i < CANDIDATES_PER_CALL; i++) {
+            socketHandler.handleTextMessage(caller, candidate);
+        }
+        counters.calls++;
+        // frames are written asynchronously, so the counter lags by at most one batch window
+        counters.frames += callee.getSentCount() - sentBefore;
+    }
+}
@@ -0,0 +1,174 @@
+package com.eltech.web.server.socket;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing lookups mixed with session churn on the session directory, run with -t 1,2,4,8 to see throughput scaling.
+ * Baseline benchmarks run the same operations on the maps behind a single global lock, the directory replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SessionDirectoryContentionBenchmark {
+    private static final int PEERS = 10000;
+
+    private SessionDirectory sessionDirectory;
+    private GlobalLockDirectory globalLockDirectory;
+    private OutboundWriter outboundWriter;
+    private String[] uids;
+
+    /**
+     * Session maps, as they were kept by the socket handler before the session directory: every access holds mapLock
+     */
+    static class GlobalLockDirectory {
+        private final Object mapLock = new Object();
+        private final Map<String, PeerSession> uninitializedSessions = new HashMap<>();
+        private final Map<String, PeerSession> peerSessionBySessionId = new HashMap<>();
+        private final Map<String, List<PeerSession>> peerSessionByUid = new HashMap<>();
+
+        void addUninitialized(PeerSession peer) {
+            synchronized (mapLock) {
+                uninitializedSessions.put(peer.getSessionId(), peer);
+            }
+        }
+
+        void initialize(String sessionId, String uid) {
+            synchronized (mapLock) {
+                PeerSession peer = uninitializedSessions.remove(sessionId);
+                if (peer != null) {
+                    peer.setPeerUid(uid);
+                    peerSessionBySessionId.put(sessionId, peer);
+                    peerSessionByUid.computeIfAbsent(uid, key -> new ArrayList<>()).add(peer);
+                }
+            }
+        }
+
+        void remove(String sessionId) {
+            synchronized (mapLock) {
+                PeerSession peer = uninitializedSessions.remove(sessionId);
+                if (peer == null) {
+                    peer = peerSessionBySessionId.remove(sessionId);
+                }
+                if (peer != null && peer.getPeerUid() != null) {
+                    List<PeerSession> sessions = peerSessionByUid.get(peer.getPeerUid());
+                    sessions.remove(peer);
+                    if (sessions.isEmpty()) {
+                        peerSessionByUid.remove(peer.getPeerUid());
+                    }
+                }
+            }
+        }
+
+        // the old handler relayed to targets while still holding the lock
+        void lookup(String sessionId, String uid, Blackhole blackhole) {
+            synchronized (mapLock) {
+                blackhole.consume(peerSessionBySessionId.get(sessionId));
+                lookupUid(uid, blackhole);
+            }
+        }
+
+        void lookupUid(String uid, Blackhole blackhole) {
+            synchronized (mapLock) {
+                List<PeerSession> targets = peerSessionByUid.get(uid);
+                if (targets != null) {
+                    for (PeerSession target : targets) {
+                        blackhole.consume(target);
+                    }
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadSession {
+        private int index = 0;
+        private final String threadId = Long.toString(Thread.currentThread().getId());
+    }
+
+    @Setup
+    public void setUp() {
+        sessionDirectory = new SessionDirectory();
+        globalLockDirectory = new GlobalLockDirectory();
+        outboundWriter = new OutboundWriter(SignalingBench.unboundedProperties(), new SignalingMetrics());
+        uids = new String[PEERS];
+        for (int i = 0; i < PEERS; i++) {
+            uids[i] = SignalingBench.uid(i);
+            StubWebSocketSession session = new StubWebSocketSession("s" + i);
+            sessionDirectory.addUninitialized(newPeerSession(session));
+            sessionDirectory.initialize(session.getId(), uids[i], 0);
+            globalLockDirectory.addUninitialized(newPeerSession(session));
+            globalLockDirectory.initialize(session.getId(), uids[i]);
+        }
+    }
+
+    private PeerSession newPeerSession(StubWebSocketSession session) {
+        return new PeerSession(session, outboundWriter.createQueue(session), new TokenBucket(0, 1), new TokenBucket(0, 1));
+    }
+
+    @TearDown
+    public void tearDown() {
+        outboundWriter.shutdown();
+    }
+
+    @Benchmark
+    @Group("routing")
+    @GroupThreads(3)
+    public void lookup(Blackhole blackhole) {
+        int index = ThreadLocalRandom.current().nextInt(PEERS);
+        blackhole.consume(sessionDirectory.getBySessionId("s" + index));
+        blackhole.consume(sessionDirectory.getByUid(uids[index]));
+    }
+
+    @Benchmark
+    @Group("routing")
+    @GroupThreads(1)
+    public void churn(ThreadSession threadSession) {
+        // connect and disconnect an extra device of a random uid
+        String sessionId = "churn" + threadSession.threadId + "_" + threadSession.index++;
+        StubWebSocketSession session = new StubWebSocketSession(sessionId);
+        sessionDirectory.addUninitialized(newPeerSession(session));
+        sessionDirectory.initialize(sessionId, uids[ThreadLocalRandom.current().nextInt(PEERS)], 0);
+        sessionDirectory.remove(sessionId);
+    }
+
+    @Benchmark
+    public void lookupOnly(Blackhole blackhole) {
+        int index = ThreadLocalRandom.current().nextInt(PEERS);
+        blackhole.consume(sessionDirectory.getByUid(uids[index]));
+    }
+
+    @Benchmark
+    @Group("routingBaseline")
+    @GroupThreads(3)
+    public void lookupBaseline(Blackhole blackhole) {
+        int index = ThreadLocalRandom.current().nextInt(PEERS);
+        globalLockDirectory.lookup("s" + index, uids[index], blackhole);
+    }
+
+    @Benchmark
+    @Group("routingBaseline")
+    @GroupThreads(1)
+    public void churnBaseline(ThreadSession threadSession) {
+        String sessionId = "churn" + threadSession.threadId + "_" + threadSession.index++;
+        StubWebSocketSession session = new StubWebSocketSession(sessionId);
+        globalLockDirectory.addUninitialized(newPeerSession(session));
+        globalLockDirectory.initialize(sessionId, uids[ThreadLocalRandom.current().nextInt(PEERS)]);
+        globalLockDirectory.remove(sessionId);
+    }
+
+    @Benchmark
+    public void lookupOnlyBaseline(Blackhole blackhole) {
+        int index = ThreadLocalRandom.current().nextInt(PEERS);
+        globalLockDirectory.lookupUid(uids[index], blackhole);
+    }
+}
@@ -0,0 +1,47 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.web.socket.TextMessage;
+
+/**
+ * Shared setup of signaling benchmarks
+ */
+final class SignalingBench {
+    // typical sdp offer is several kilobytes
+    static final String SDP_BODY = "v=0\\r\\no=- 4611731400430051336 2 IN IP4 127.0.0.1\\r\\ns=-\\r\\nt=0 0\\r\\n".repeat(60);
+    static final String CANDIDATE_BODY = "candidate:842163049 1 udp 1677729535 192.168.1.10 53705 typ srflx raddr 0.0.0.0 rport 0 generation 0";
+
+    private SignalingBench() {
+    }
+
+    static SignalingProperties unboundedProperties() {
+        SignalingProperties properties = new SignalingProperties();
+        properties.getOutbound().setMaxFrames(Integer.MAX_VALUE);
+        properties.getOutbound().setMaxBytes(Integer.MAX_VALUE);
+        properties.getOutbound().setSendTimeLimitMs(Long.MAX_VALUE / 2);
+        properties.getLimits().setSdpPerSecond(0);
+        properties.getLimits().setCandidatesPerSecond(0);
+        properties.getLimits().setMaxSessionsPerUid(0);
+        properties.getLimits().setMaxConnections(0);
+        // frames are handled on the benchmark thread, so relay cost is measured, not lane hand-off
+        properties.getDispatch().setLanes(0);
+        return properties;
+    }
+
+    static String uid(int index) {
+        return String.format("00000000-0000-0000-0000-%012d", index);
+    }
+
+    static TextMessage peerInit(String uid) {
+        return new TextMessage("{\"type\":\"peer_init\",\"payload\":{\"uid\":\"" + uid + "\"}}");
+    }
+
+    static TextMessage sdp(String senderUid, String targetUid) {
+        return new TextMessage("{\"type\":\"sdp\",\"payload\":{\"senderUid\":\"" + senderUid + "\",\"targetUid\":\"" + targetUid
+                + "\",\"sdp\":{\"type\":\"offer\",\"sdp\":\"" + SDP_BODY + "\"}}}");
+    }
+
+    static TextMessage candidate(String senderUid, String targetUid) {
+        return new TextMessage("{\"type\":\"candidate\",\"payload\":{\"senderUid\":\"" + senderUid + "\",\"targetUid\":\"" + targetUid
+                + "\",\"candidate\":{\"candidate\":\"" + CANDIDATE_BODY + "\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}}}");
+    }
+}
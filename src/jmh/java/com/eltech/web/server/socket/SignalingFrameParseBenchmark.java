@@ -0,0 +1,58 @@
+package com.eltech.web.server.socket;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming routing header extraction against former tree parsing, run with -prof gc to see bytes allocated per op
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SignalingFrameParseBenchmark {
+    private static class EventWithTargetPeer {
+        String senderUid;
+        String targetUid;
+    }
+
+    @Param({ "sdp", "candidate" })
+    public String type;
+
+    private final Gson gson = new Gson();
+    private String text;
+
+    @Setup
+    public void setUp() {
+        String senderUid = SignalingBench.uid(1);
+        String targetUid = SignalingBench.uid(2);
+        text = ("sdp".equals(type) ? SignalingBench.sdp(senderUid, targetUid) : SignalingBench.candidate(senderUid, targetUid)).getPayload();
+    }
+
+    @Benchmark
+    public void tree(Blackhole blackhole) {
+        JsonObject json = JsonParser.parseString(text).getAsJsonObject();
+        String type = json.get("type").getAsString();
+        JsonElement payload = json.get("payload");
+        EventWithTargetPeer event = gson.fromJson(payload, EventWithTargetPeer.class);
+        blackhole.consume(type);
+        blackhole.consume(event.senderUid);
+        blackhole.consume(event.targetUid);
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) throws IOException {
+        SignalingFrame frame = SignalingFrame.parse(text);
+        blackhole.consume(frame.type);
+        blackhole.consume(frame.senderUid);
+        blackhole.consume(frame.targetUid);
+    }
+}
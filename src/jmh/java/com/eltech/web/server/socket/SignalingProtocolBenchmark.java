@@ -0,0 +1,90 @@
+package com.eltech.web.server.socket;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU and bytes on the wire per relayed frame for json text and binary sub-protocol, and for conversion between them.
+ * Bytes on the wire are the wireBytes / wireFrames counters of relay, run with -prof gc to compare allocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SignalingProtocolBenchmark {
+    // sender protocol - target protocol
+    @Param({ "text-text", "binary-binary", "text-binary", "binary-text" })
+    public String protocols;
+
+    @Param({ "sdp", "candidate" })
+    public String frame;
+
+    private SignalingStack stack;
+    private StubWebSocketSession senderSession;
+    private StubWebSocketSession targetSession;
+    private WebSocketMessage<?> message;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class WireCounters {
+        // payload bytes and frames, written to the target session in its protocol
+        public long wireBytes;
+        public long wireFrames;
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        stack = new SignalingStack(SignalingBench.unboundedProperties());
+        String[] pair = protocols.split("-");
+        String senderUid = SignalingBench.uid(0);
+        String targetUid = SignalingBench.uid(1);
+        senderSession = connect("s0", senderUid, pair[0]);
+        targetSession = connect("s1", targetUid, pair[1]);
+
+        TextMessage text = "sdp".equals(frame) ? SignalingBench.sdp(senderUid, targetUid) : SignalingBench.candidate(senderUid, targetUid);
+        BinaryMessage binary = BinarySignalingFrame.toBinary(text);
+        message = "binary".equals(pair[0]) ? binary : text;
+    }
+
+    private StubWebSocketSession connect(String sessionId, String uid, String protocol) throws Exception {
+        StubWebSocketSession session = new StubWebSocketSession(sessionId, uid);
+        if ("binary".equals(protocol)) {
+            session.setAcceptedProtocol(BinarySignalingFrame.PROTOCOL);
+        }
+        stack.socketHandler.afterConnectionEstablished(session);
+        stack.socketHandler.handleTextMessage(session, SignalingBench.peerInit(uid));
+        return session;
+    }
+
+    @TearDown
+    public void tearDown() {
+        stack.shutdown();
+    }
+
+    @Benchmark
+    public void relay(WireCounters counters) {
+        long bytesBefore = targetSession.getSentBytes();
+        long framesBefore = targetSession.getSentCount();
+        if (message instanceof BinaryMessage) {
+            stack.socketHandler.handleBinaryMessage(senderSession, (BinaryMessage) message);
+        } else {
+            stack.socketHandler.handleTextMessage(senderSession, (TextMessage) message);
+        }
+        // frames are written asynchronously, so the counters lag by the frames, that are still queued
+        counters.wireBytes += targetSession.getSentBytes() - bytesBefore;
+        counters.wireFrames += targetSession.getSentCount() - framesBefore;
+    }
+
+    @Benchmark
+    public Object parseHeader() throws Exception {
+        if (message instanceof BinaryMessage) {
+            return BinarySignalingFrame.parse(((BinaryMessage) message).getPayload());
+        }
+        return SignalingFrame.parse(((TextMessage) message).getPayload());
+    }
+}
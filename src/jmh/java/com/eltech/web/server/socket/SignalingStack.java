@@ -0,0 +1,59 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.log.EventLogProperties;
+import com.eltech.web.server.socket.cluster.ClusterTransport;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+/**
+ * Signaling components, wired the same way as in the application context, without database access
+ */
+class SignalingStack {
+    final SignalingProperties properties;
+    final SignalingMetrics metrics;
+    final EventLog eventLog;
+    final SessionDirectory sessionDirectory;
+    final OutboundWriter outboundWriter;
+    final SessionReaper sessionReaper;
+    final PendingFrameBuffer pendingFrameBuffer;
+    final ClusterRouter clusterRouter;
+    final CallPinRegistry callPinRegistry;
+    final CandidateBatcher candidateBatcher;
+    final AdmissionControl admissionControl;
+    final DispatchLanes dispatchLanes;
+    final SocketHandler socketHandler;
+
+    SignalingStack(SignalingProperties properties) {
+        this.properties = properties;
+        this.metrics = new SignalingMetrics();
+        this.eventLog = new EventLog(disabledEventLogProperties());
+        this.sessionDirectory = new SessionDirectory();
+        this.outboundWriter = new OutboundWriter(properties, metrics);
+        this.sessionReaper = new SessionReaper(sessionDirectory, properties, metrics, eventLog);
+        this.pendingFrameBuffer = new PendingFrameBuffer(sessionDirectory, sessionReaper, properties);
+        this.clusterRouter = new ClusterRouter(sessionDirectory, pendingFrameBuffer, metrics, properties, eventLog, new StaticListableBeanFactory().getBeanProvider(ClusterTransport.class));
+        this.callPinRegistry = new CallPinRegistry(sessionDirectory, sessionReaper, properties);
+        this.candidateBatcher = new CandidateBatcher(sessionDirectory, clusterRouter, pendingFrameBuffer, callPinRegistry, properties);
+        this.admissionControl = new AdmissionControl(sessionDirectory, properties);
+        this.dispatchLanes = new DispatchLanes(properties, eventLog);
+        this.socketHandler = new SocketHandler(sessionDirectory, outboundWriter, sessionReaper, new GroupMemberCache(null),
+                clusterRouter, pendingFrameBuffer, candidateBatcher, admissionControl, callPinRegistry,
+                dispatchLanes, metrics, eventLog);
+    }
+
+    // benchmarks do not write log files
+    private static EventLogProperties disabledEventLogProperties() {
+        EventLogProperties properties = new EventLogProperties();
+        properties.setEnabled(false);
+        return properties;
+    }
+
+    void shutdown() {
+        dispatchLanes.shutdown();
+        clusterRouter.shutdown();
+        candidateBatcher.shutdown();
+        sessionReaper.shutdown();
+        outboundWriter.shutdown();
+        eventLog.shutdown();
+    }
+}
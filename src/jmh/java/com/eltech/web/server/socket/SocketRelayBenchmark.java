@@ -0,0 +1,76 @@
+package com.eltech.web.server.socket;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput of SocketHandler relay for different count of connected peers, run with -t N to measure contention
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SocketRelayBenchmark {
+    @Param({ "1", "10", "10000" })
+    public int peers;
+
+    private SignalingStack stack;
+    private SocketHandler socketHandler;
+
+    private StubWebSocketSession[] sessions;
+    private TextMessage[] sdpMessages;
+    private TextMessage[] candidateMessages;
+
+    private final AtomicLong sessionIndex = new AtomicLong();
+
+    @Setup
+    public void setUp() throws Exception {
+        stack = new SignalingStack(SignalingBench.unboundedProperties());
+        socketHandler = stack.socketHandler;
+
+        sessions = new StubWebSocketSession[peers];
+        sdpMessages = new TextMessage[peers];
+        candidateMessages = new TextMessage[peers];
+        for (int i = 0; i < peers; i++) {
+            sessions[i] = new StubWebSocketSession("s" + i, SignalingBench.uid(i));
+            socketHandler.afterConnectionEstablished(sessions[i]);
+            socketHandler.handleTextMessage(sessions[i], SignalingBench.peerInit(SignalingBench.uid(i)));
+        }
+        for (int i = 0; i < peers; i++) {
+            String targetUid = SignalingBench.uid((i + 1) % peers);
+            sdpMessages[i] = SignalingBench.sdp(SignalingBench.uid(i), targetUid);
+            candidateMessages[i] = SignalingBench.candidate(SignalingBench.uid(i), targetUid);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        stack.shutdown();
+    }
+
+    @Benchmark
+    public void peerInit() throws Exception {
+        StubWebSocketSession session = new StubWebSocketSession("init" + sessionIndex.incrementAndGet(), SignalingBench.uid(peers));
+        socketHandler.afterConnectionEstablished(session);
+        socketHandler.handleTextMessage(session, SignalingBench.peerInit(SignalingBench.uid(peers)));
+        socketHandler.afterConnectionClosed(session, CloseStatus.NORMAL);
+    }
+
+    @Benchmark
+    public void sdp() {
+        int index = ThreadLocalRandom.current().nextInt(peers);
+        socketHandler.handleTextMessage(sessions[index], sdpMessages[index]);
+    }
+
+    @Benchmark
+    public void candidate() {
+        int index = ThreadLocalRandom.current().nextInt(peers);
+        socketHandler.handleTextMessage(sessions[index], candidateMessages[index]);
+    }
+}
@@ -0,0 +1,136 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Session, that accepts and counts all sent messages without any io
+ */
+public class StubWebSocketSession implements WebSocketSession {
+    private final String id;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong sentBytes = new AtomicLong();
+    private volatile boolean open = true;
+    private volatile String acceptedProtocol = null;
+
+    public StubWebSocketSession(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Creates session, authenticated as given uid at handshake
+     */
+    public StubWebSocketSession(String id, String uid) {
+        this(id);
+        attributes.put(ChatUserHandshakeInterceptor.ATTRIBUTE_UID, uid);
+    }
+
+    public void setAcceptedProtocol(String acceptedProtocol) {
+        this.acceptedProtocol = acceptedProtocol;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create("ws://localhost/socket");
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return acceptedProtocol;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        sentCount.incrementAndGet();
+        sentBytes.addAndGet(message.getPayloadLength());
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        open = false;
+    }
+}
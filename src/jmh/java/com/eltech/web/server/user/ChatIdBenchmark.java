@@ -0,0 +1,24 @@
+package com.eltech.web.server.user;
+
+import com.eltech.web.server.user.controller.ChatController;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChatIdBenchmark {
+    @Param({ "d123456", "g42", "x1", "dnot_a_number" })
+    public String chatId;
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        ChatController.ChatId id = new ChatController.ChatId(chatId);
+        blackhole.consume(id.isValid());
+        blackhole.consume(id.getId());
+    }
+}
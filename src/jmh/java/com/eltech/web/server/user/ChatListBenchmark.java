@@ -0,0 +1,86 @@
+package com.eltech.web.server.user;
+
+import com.eltech.web.server.socket.GroupMemberCache;
+import com.eltech.web.server.user.cache.UserCache;
+import com.eltech.web.server.user.cache.UserCacheBroadcast;
+import com.eltech.web.server.user.cache.UserCacheProperties;
+import com.eltech.web.server.user.controller.ChatController;
+import com.eltech.web.server.user.entity.ChatUser;
+import com.eltech.web.server.user.entity.Dialog;
+import com.eltech.web.server.user.entity.GroupChat;
+import com.eltech.web.server.user.service.ChatActivityBuffer;
+import com.eltech.web.server.user.service.ChatActivityProperties;
+import com.eltech.web.server.user.service.DialogService;
+import com.eltech.web.server.user.service.GroupChatService;
+import com.eltech.web.server.user.service.UserResolver;
+import com.eltech.web.server.user.service.UserService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assembly of /api/chat/list for users with different count of chats, repositories are in memory,
+ * so only controller and service work is measured
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ChatListBenchmark {
+    // every tenth chat is a group chat
+    private static final int GROUP_CHAT_FRACTION = 10;
+    private static final int GROUP_CHAT_SIZE = 8;
+
+    @Param({ "10", "1000", "10000" })
+    public int chats;
+
+    private ChatController chatController;
+    private ChatUser user;
+
+    @Setup
+    @SuppressWarnings("deprecation")
+    public void setUp() {
+        InMemoryUserRepository userRepository = new InMemoryUserRepository();
+        InMemoryGroupChatRepository groupChatRepository = new InMemoryGroupChatRepository();
+        UserCache userCache = new UserCache(new UserCacheProperties(), new StaticListableBeanFactory().getBeanProvider(UserCacheBroadcast.class));
+        UserService userService = new UserService(userRepository, groupChatRepository, NoOpPasswordEncoder.getInstance(), event -> {}, userCache);
+        // nothing is recorded in benchmark, so buffer never writes
+        ChatActivityBuffer activityBuffer = new ChatActivityBuffer(new ChatActivityProperties(), null, null);
+        DialogService dialogService = new DialogService(userService, event -> {}, activityBuffer);
+        GroupChatService groupChatService = new GroupChatService(groupChatRepository, event -> {}, activityBuffer);
+        chatController = new ChatController(userService, dialogService, groupChatService, new UserResolver(userService), activityBuffer,
+                new GroupMemberCache(groupChatService));
+
+        user = userRepository.save(new ChatUser(UUID.randomUUID().toString(), "user", "password"));
+        for (int i = 0; i < chats; i++) {
+            ChatUser target = userRepository.save(new ChatUser(UUID.randomUUID().toString(), "target" + i, "password"));
+            if (i % GROUP_CHAT_FRACTION == 0) {
+                GroupChat groupChat = new GroupChat("group" + i, user);
+                groupChat.setLastActivityTime(i);
+                groupChat.getUsers().add(user);
+                groupChat.getUsers().add(target);
+                for (int j = 2; j < GROUP_CHAT_SIZE; j++) {
+                    groupChat.getUsers().add(userRepository.save(new ChatUser(UUID.randomUUID().toString(), "member" + i + "_" + j, "password")));
+                }
+                groupChatRepository.save(groupChat);
+                user.getGroupChats().add(groupChat);
+            } else {
+                Dialog dialog = new Dialog(user, target.getUid());
+                dialog.setId((long) i);
+                dialog.setLastActivityTime(i);
+                user.getDialogs().add(dialog);
+            }
+        }
+        userRepository.save(user);
+    }
+
+    @Benchmark
+    public List<?> listChats() {
+        return chatController.listChats(user, null, null, null);
+    }
+}
@@ -0,0 +1,87 @@
+package com.eltech.web.server.user;
+
+import org.springframework.data.repository.CrudRepository;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Map-backed repository, entities are stored by reference, so there is no persistence cost in benchmarks
+ */
+public class InMemoryCrudRepository<T> implements CrudRepository<T, Long> {
+    protected final Map<Long, T> entities = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Function<T, Long> idGetter;
+    private final BiConsumer<T, Long> idSetter;
+
+    public InMemoryCrudRepository(Function<T, Long> idGetter, BiConsumer<T, Long> idSetter) {
+        this.idGetter = idGetter;
+        this.idSetter = idSetter;
+    }
+
+    @Override
+    public <S extends T> S save(S entity) {
+        if (idGetter.apply(entity) == null) {
+            idSetter.accept(entity, nextId.getAndIncrement());
+        }
+        entities.put(idGetter.apply(entity), entity);
+        return entity;
+    }
+
+    @Override
+    public <S extends T> Iterable<S> saveAll(Iterable<S> entities) {
+        List<S> result = new ArrayList<>();
+        entities.forEach(entity -> result.add(save(entity)));
+        return result;
+    }
+
+    @Override
+    public Optional<T> findById(Long id) {
+        return Optional.ofNullable(entities.get(id));
+    }
+
+    @Override
+    public boolean existsById(Long id) {
+        return entities.containsKey(id);
+    }
+
+    @Override
+    public Iterable<T> findAll() {
+        return new ArrayList<>(entities.values());
+    }
+
+    @Override
+    public Iterable<T> findAllById(Iterable<Long> ids) {
+        List<T> result = new ArrayList<>();
+        ids.forEach(id -> findById(id).ifPresent(result::add));
+        return result;
+    }
+
+    @Override
+    public long count() {
+        return entities.size();
+    }
+
+    @Override
+    public void deleteById(Long id) {
+        entities.remove(id);
+    }
+
+    @Override
+    public void delete(T entity) {
+        entities.remove(idGetter.apply(entity));
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends T> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        entities.clear();
+    }
+}
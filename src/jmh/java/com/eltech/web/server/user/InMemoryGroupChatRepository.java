@@ -0,0 +1,53 @@
+package com.eltech.web.server.user;
+
+import com.eltech.web.server.user.entity.ChatUser;
+import com.eltech.web.server.user.entity.GroupChat;
+import com.eltech.web.server.user.repo.ChatListRow;
+import com.eltech.web.server.user.repo.GroupChatRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+public class InMemoryGroupChatRepository extends InMemoryCrudRepository<GroupChat> implements GroupChatRepository {
+    public InMemoryGroupChatRepository() {
+        super(GroupChat::getId, GroupChat::setId);
+    }
+
+    @Override
+    public GroupChat findGroupChatByInviteUid(String inviteUid) {
+        return entities.values().stream().filter(chat -> Objects.equals(inviteUid, chat.getInviteUid())).findFirst().orElse(null);
+    }
+
+    @Override
+    public List<String> findMemberUids(long chatId) {
+        GroupChat chat = entities.get(chatId);
+        return chat != null ? chat.getUsers().stream().map(ChatUser::getUid).collect(Collectors.toList()) : List.of();
+    }
+
+    @Override
+    public List<ChatListRow> findGroupChatListRows(long userId) {
+        List<ChatListRow> rows = new ArrayList<>();
+        entities.values().stream()
+                .filter(chat -> chat.getUsers().stream().anyMatch(user -> user.getId() == userId))
+                .sorted(Comparator.comparingLong(GroupChat::getLastActivityTime).thenComparing(GroupChat::getId).reversed())
+                .forEach(chat -> {
+                    int size = rows.size();
+                    chat.getUsers().stream()
+                            .filter(user -> user.getId() != userId)
+                            .forEach(user -> rows.add(new ChatListRow(chat.getId(), chat.getName(), chat.getLastActivityTime(), user.getUid())));
+                    if (rows.size() == size) {
+                        rows.add(new ChatListRow(chat.getId(), chat.getName(), chat.getLastActivityTime(), null));
+                    }
+                });
+        return rows;
+    }
+
+    @Override
+    public List<ChatListRow> findGroupChatListRowsByIds(long userId, Collection<Long> ids) {
+        return findGroupChatListRows(userId).stream().filter(row -> ids.contains(row.getChatId())).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,125 @@
+package com.eltech.web.server.user;
+
+import com.eltech.web.server.user.entity.ChatUser;
+import com.eltech.web.server.user.entity.Dialog;
+import com.eltech.web.server.user.repo.ChatListRow;
+import com.eltech.web.server.user.repo.UserRepository;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class InMemoryUserRepository extends InMemoryCrudRepository<ChatUser> implements UserRepository {
+    private final Map<String, ChatUser> usersByUid = new ConcurrentHashMap<>();
+
+    public InMemoryUserRepository() {
+        super(ChatUser::getId, ChatUser::setId);
+    }
+
+    @Override
+    public <S extends ChatUser> S save(S entity) {
+        super.save(entity);
+        usersByUid.put(entity.getUid(), entity);
+        return entity;
+    }
+
+    @Override
+    public ChatUser findByUsername(String username) {
+        return entities.values().stream().filter(user -> Objects.equals(username, user.getUsername())).findFirst().orElse(null);
+    }
+
+    @Override
+    public ChatUser findByUid(String uid) {
+        return usersByUid.get(uid);
+    }
+
+    @Override
+    public List<ChatUser> findByUidIn(Collection<String> uids) {
+        return uids.stream().map(usersByUid::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    @Override
+    public String findUidById(long id) {
+        return findById(id).map(ChatUser::getUid).orElse(null);
+    }
+
+    @Override
+    public List<String> findDialogTargetUids(String uid) {
+        ChatUser user = findByUid(uid);
+        return user != null ? user.getDialogs().stream().map(Dialog::getTarget).collect(Collectors.toList()) : List.of();
+    }
+
+    @Override
+    public List<String> findDialogOwnerUidsByTarget(String uid) {
+        return entities.values().stream()
+                .filter(user -> user.getDialogs().stream().anyMatch(dialog -> uid.equals(dialog.getTarget())))
+                .map(ChatUser::getUid)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<String> findGroupChatMemberUids(String uid) {
+        ChatUser user = findByUid(uid);
+        if (user == null) {
+            return List.of();
+        }
+        return user.getGroupChats().stream()
+                .flatMap(chat -> chat.getUsers().stream())
+                .map(ChatUser::getUid)
+                .filter(memberUid -> !uid.equals(memberUid))
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<ChatListRow> findDialogListRows(long userId) {
+        ChatUser user = entities.get(userId);
+        if (user == null) {
+            return List.of();
+        }
+        return user.getDialogs().stream()
+                .sorted(Comparator.comparingLong(Dialog::getLastActivityTime).thenComparing(Dialog::getId).reversed())
+                .map(dialog -> {
+                    ChatUser target = usersByUid.get(dialog.getTarget());
+                    return new ChatListRow(dialog.getId(), target != null ? target.getUsername() : null, dialog.getLastActivityTime(), dialog.getTarget());
+                })
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public String findDialogOwnerUid(long userId, long dialogId) {
+        ChatUser user = entities.get(userId);
+        return user != null && user.getDialog(dialogId) != null ? user.getUid() : null;
+    }
+
+    @Override
+    public List<ChatListRow> findDialogListRowsByIds(long userId, Collection<Long> ids) {
+        return findDialogListRows(userId).stream().filter(row -> ids.contains(row.getChatId())).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Object[]> findChatPageKeys(long userId, long time, long dialogId, long groupChatId, int limit) {
+        ChatUser user = entities.get(userId);
+        if (user == null) {
+            return List.of();
+        }
+        // same order as the native query: time desc, dialogs first, id desc
+        Comparator<Object[]> order = Comparator.<Object[]>comparingLong(key -> (long) key[2])
+                .thenComparingInt(key -> (int) key[0])
+                .thenComparingLong(key -> (long) key[1])
+                .reversed();
+        return Stream.concat(
+                user.getDialogs().stream()
+                        .filter(dialog -> dialog.getLastActivityTime() < time || (dialog.getLastActivityTime() == time && dialog.getId() < dialogId))
+                        .map(dialog -> new Object[] { 1, dialog.getId(), dialog.getLastActivityTime() }),
+                user.getGroupChats().stream()
+                        .filter(chat -> chat.getLastActivityTime() < time || (chat.getLastActivityTime() == time && chat.getId() < groupChatId))
+                        .map(chat -> new Object[] { 0, chat.getId(), chat.getLastActivityTime() })
+        ).sorted(order).limit(limit).collect(Collectors.toList());
+    }
+}
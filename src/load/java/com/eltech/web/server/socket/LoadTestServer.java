@@ -0,0 +1,76 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.DispatcherServletAutoConfiguration;
+import org.springframework.boot.autoconfigure.web.servlet.ServletWebServerFactoryAutoConfiguration;
+import org.springframework.boot.autoconfigure.websocket.servlet.WebSocketServletAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * Embedded server with the signaling socket only, no database and no authentication:
+ * uid, that is bound to the session at handshake, is taken from "uid" query parameter
+ */
+@Configuration
+@EnableWebSocket
+@ImportAutoConfiguration({ ServletWebServerFactoryAutoConfiguration.class, DispatcherServletAutoConfiguration.class,
+        WebSocketServletAutoConfiguration.class })
+public class LoadTestServer implements WebSocketConfigurer {
+    private final SignalingStack signalingStack;
+
+    public LoadTestServer(SignalingStack signalingStack) {
+        this.signalingStack = signalingStack;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    static SignalingStack signalingStack() {
+        SignalingProperties properties = SignalingBench.unboundedProperties();
+        // load goes through dispatch lanes, as in production
+        properties.getDispatch().setLanes(Runtime.getRuntime().availableProcessors());
+        return new SignalingStack(properties);
+    }
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        registry.addHandler(signalingStack.socketHandler, "/socket").addInterceptors(new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                String uid = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams().getFirst("uid");
+                if (uid == null) {
+                    return false;
+                }
+                attributes.put(ChatUserHandshakeInterceptor.ATTRIBUTE_UID, uid);
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception exception) {
+
+            }
+        });
+    }
+
+    /**
+     * Starts server on a free port
+     */
+    static ServletWebServerApplicationContext start() {
+        return (ServletWebServerApplicationContext) new SpringApplicationBuilder(LoadTestServer.class)
+                .web(WebApplicationType.SERVLET)
+                // application.properties of the server is not loaded, it points to the database and keystore
+                .properties("spring.config.name=load-test", "server.port=0", "spring.main.banner-mode=off")
+                .run();
+    }
+}
@@ -0,0 +1,274 @@
+package com.eltech.web.server.socket;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Simulates call setups against the signaling socket of an embedded server.
+ * Opens given count of clients, each sends peer_init, then runs calls between random pairs:
+ * caller sends an sdp offer, callee answers, both sides trickle ice candidates.
+ * Reports setup latency (offer sent till answer received) percentiles, frames per second and error rate,
+ * exits with code 1, if error rate is above allowed one, so it can be used as a ci check.
+ *
+ * Arguments are key=value pairs: clients, calls, concurrency, candidates, timeoutMs, maxErrorRate.
+ */
+public class SignalingLoadGenerator {
+    // offer and answer bodies are padded to the size of a typical browser sdp
+    private static final String SDP_BODY = "v=0\\r\\n" + "a=candidate:1 1 udp 2122260223 192.168.0.1 50000 typ host\\r\\n".repeat(40);
+
+    private static class Call {
+        final long id;
+        final Client caller;
+        final Client callee;
+        final long startTime = System.nanoTime();
+        volatile long setupNanos = -1;
+        final AtomicInteger callerCandidates = new AtomicInteger();
+        final AtomicInteger calleeCandidates = new AtomicInteger();
+        final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+        Call(long id, Client caller, Client callee) {
+            this.id = id;
+            this.caller = caller;
+            this.callee = callee;
+        }
+    }
+
+    private final int clientCount;
+    private final int callCount;
+    private final int concurrency;
+    private final int candidateCount;
+    private final long timeoutMs;
+    private final double maxErrorRate;
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final Map<Long, Call> calls = new ConcurrentHashMap<>();
+    private final AtomicLong receivedFrames = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final AtomicLong errorCount = new AtomicLong();
+    private final ConcurrentLinkedQueue<Long> setupLatencies = new ConcurrentLinkedQueue<>();
+
+    private class Client implements WebSocket.Listener {
+        final String uid = UUID.randomUUID().toString();
+        final CompletableFuture<Void> initialized = new CompletableFuture<>();
+        private final StringBuilder partial = new StringBuilder();
+        private WebSocket webSocket;
+        // sends of a single web socket must not overlap
+        private CompletableFuture<?> lastSend = CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Void> connect(URI uri) {
+            return httpClient.newWebSocketBuilder()
+                    .connectTimeout(Duration.ofMillis(timeoutMs))
+                    .buildAsync(URI.create(uri + "?uid=" + uid), this)
+                    .thenCompose(webSocket -> {
+                        send("{\"type\":\"peer_init\",\"payload\":{\"uid\":\"" + uid + "\"}}");
+                        return initialized;
+                    });
+        }
+
+        synchronized void send(String text) {
+            sentFrames.incrementAndGet();
+            lastSend = lastSend.thenCompose(ignore -> webSocket.sendText(text, true)).exceptionally(e -> {
+                errorCount.incrementAndGet();
+                return null;
+            });
+        }
+
+        void sendSdp(Client target, long callId, String sdpType) {
+            send("{\"type\":\"sdp\",\"payload\":{\"senderUid\":\"" + uid + "\",\"targetUid\":\"" + target.uid + "\",\"callId\":" + callId
+                    + ",\"sdp\":{\"type\":\"" + sdpType + "\",\"sdp\":\"" + SDP_BODY + "\"}}}");
+        }
+
+        void sendCandidates(Client target, long callId) {
+            for (int i = 0; i < candidateCount; i++) {
+                send("{\"type\":\"candidate\",\"payload\":{\"senderUid\":\"" + uid + "\",\"targetUid\":\"" + target.uid + "\",\"callId\":" + callId
+                        + ",\"candidate\":{\"candidate\":\"candidate:" + i + " 1 udp 2122260223 192.168.0." + i + " " + (50000 + i)
+                        + " typ host\",\"sdpMid\":\"0\",\"sdpMLineIndex\":0}}}");
+            }
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket) {
+            synchronized (this) {
+                this.webSocket = webSocket;
+            }
+            webSocket.request(1);
+        }
+
+        @Override
+        public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                String text = partial.toString();
+                partial.setLength(0);
+                receivedFrames.incrementAndGet();
+                try {
+                    onFrame(JsonParser.parseString(text).getAsJsonObject());
+                } catch (RuntimeException e) {
+                    errorCount.incrementAndGet();
+                }
+            }
+            webSocket.request(1);
+            return null;
+        }
+
+        private void onFrame(JsonObject frame) {
+            String type = frame.get("type").getAsString();
+            JsonObject payload = frame.getAsJsonObject("payload");
+            if (SocketHandler.EVENT_SESSION.equals(type)) {
+                initialized.complete(null);
+                return;
+            }
+            Call call = payload.has("callId") ? calls.get(payload.get("callId").getAsLong()) : null;
+            if (call == null) {
+                return;
+            }
+
+            if (SocketHandler.EVENT_SDP.equals(type)) {
+                if ("offer".equals(payload.getAsJsonObject("sdp").get("type").getAsString())) {
+                    // callee answers right away and starts trickling candidates
+                    sendSdp(call.caller, call.id, "answer");
+                    sendCandidates(call.caller, call.id);
+                } else {
+                    call.setupNanos = System.nanoTime() - call.startTime;
+                    call.caller.sendCandidates(call.callee, call.id);
+                }
+            } else if (SocketHandler.EVENT_CANDIDATE.equals(type)) {
+                AtomicInteger received = this == call.caller ? call.callerCandidates : call.calleeCandidates;
+                received.incrementAndGet();
+                if (call.callerCandidates.get() >= candidateCount && call.calleeCandidates.get() >= candidateCount && call.setupNanos >= 0) {
+                    call.completion.complete(null);
+                }
+            }
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+            errorCount.incrementAndGet();
+            initialized.completeExceptionally(new IllegalStateException("closed: " + statusCode + " " + reason));
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket webSocket, Throwable error) {
+            errorCount.incrementAndGet();
+            initialized.completeExceptionally(error);
+        }
+
+        void close() {
+            if (webSocket != null) {
+                webSocket.abort();
+            }
+        }
+    }
+
+    SignalingLoadGenerator(Map<String, String> args) {
+        this.clientCount = Integer.parseInt(args.getOrDefault("clients", "200"));
+        this.callCount = Integer.parseInt(args.getOrDefault("calls", "2000"));
+        this.concurrency = Integer.parseInt(args.getOrDefault("concurrency", "50"));
+        this.candidateCount = Integer.parseInt(args.getOrDefault("candidates", "8"));
+        this.timeoutMs = Long.parseLong(args.getOrDefault("timeoutMs", "10000"));
+        this.maxErrorRate = Double.parseDouble(args.getOrDefault("maxErrorRate", "0.01"));
+    }
+
+    /**
+     * @return true, if error rate did not exceed allowed one
+     */
+    boolean run(URI uri) throws InterruptedException {
+        List<Client> clients = new ArrayList<>();
+        List<CompletableFuture<Void>> connections = new ArrayList<>();
+        long connectStartTime = System.nanoTime();
+        for (int i = 0; i < clientCount; i++) {
+            Client client = new Client();
+            clients.add(client);
+            connections.add(client.connect(uri));
+        }
+        try {
+            CompletableFuture.allOf(connections.toArray(new CompletableFuture[0])).get(timeoutMs * 3, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            System.out.println("clients failed to connect: " + e);
+            clients.forEach(Client::close);
+            return false;
+        }
+        System.out.printf("connected and initialized %d clients in %d ms%n", clientCount, (System.nanoTime() - connectStartTime) / 1000000);
+
+        Random random = new Random(42);
+        Semaphore activeCalls = new Semaphore(concurrency);
+        AtomicLong failedCalls = new AtomicLong();
+        long startTime = System.nanoTime();
+        for (long id = 0; id < callCount; id++) {
+            activeCalls.acquire();
+            int callerIndex = random.nextInt(clientCount);
+            int calleeIndex = (callerIndex + 1 + random.nextInt(clientCount - 1)) % clientCount;
+            Call call = new Call(id, clients.get(callerIndex), clients.get(calleeIndex));
+            calls.put(id, call);
+            call.completion.orTimeout(timeoutMs, TimeUnit.MILLISECONDS).whenComplete((result, error) -> {
+                if (error != null) {
+                    failedCalls.incrementAndGet();
+                } else {
+                    setupLatencies.add(call.setupNanos);
+                }
+                calls.remove(call.id);
+                activeCalls.release();
+            });
+            call.caller.sendSdp(call.callee, id, "offer");
+        }
+        activeCalls.acquire(concurrency);
+        long elapsedNanos = System.nanoTime() - startTime;
+
+        long[] latencies = setupLatencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        double seconds = elapsedNanos / 1e9;
+        double errorRate = (double) (failedCalls.get() + errorCount.get()) / callCount;
+        System.out.printf("calls: %d completed, %d failed in %.2f s, %.1f calls/s%n", latencies.length, failedCalls.get(), seconds, latencies.length / seconds);
+        System.out.printf("frames: %d sent, %d received, %.0f frames/s received%n", sentFrames.get(), receivedFrames.get(), receivedFrames.get() / seconds);
+        System.out.printf("setup latency ms: p50 %.2f, p90 %.2f, p99 %.2f, max %.2f%n",
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99), percentile(latencies, 1));
+        System.out.printf("errors: %d client errors, error rate %.4f (max %.4f)%n", errorCount.get(), errorRate, maxErrorRate);
+
+        clients.forEach(Client::close);
+        return errorRate <= maxErrorRate;
+    }
+
+    private static double percentile(long[] sortedNanos, double percentile) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(index, sortedNanos.length - 1))] / 1e6;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        Arrays.stream(args).map(arg -> arg.split("=", 2)).filter(pair -> pair.length == 2).forEach(pair -> options.put(pair[0], pair[1]));
+
+        ServletWebServerApplicationContext context = LoadTestServer.start();
+        boolean passed;
+        try {
+            URI uri = URI.create("ws://localhost:" + context.getWebServer().getPort() + "/socket");
+            passed = new SignalingLoadGenerator(options).run(uri);
+        } finally {
+            context.close();
+        }
+        System.exit(passed ? 0 : 1);
+    }
+}
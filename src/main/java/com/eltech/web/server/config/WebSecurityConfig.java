@@ -21,6 +21,8 @@ public class WebSecurityConfig extends WebSecurityConfigurerAdapter {
                 .and()
                     .authorizeRequests()
                         .antMatchers("/socket", "/users", "/api/auth/**").permitAll()
+                        // metrics are scraped by a local agent, they are not exposed to clients
+                        .antMatchers("/metrics").access("hasIpAddress('127.0.0.1') or hasIpAddress('::1')")
                         .anyRequest().authenticated()
                 .and().httpBasic().disable()
                 .csrf().disable();
@@ -1,4 +1,6 @@
 package com.eltech.web.server.config;
+import com.eltech.web.server.socket.AdmissionControl;
+import com.eltech.web.server.socket.ChatUserHandshakeInterceptor;
 import com.eltech.web.server.socket.SocketHandler;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -8,10 +10,22 @@ import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry
 @Configuration
 @EnableWebSocket
 public class WebSocketConfig implements WebSocketConfigurer {
+    private final SocketHandler socketHandler;
+    private final ChatUserHandshakeInterceptor handshakeInterceptor;
+    private final AdmissionControl admissionControl;
+
+    public WebSocketConfig(SocketHandler socketHandler, ChatUserHandshakeInterceptor handshakeInterceptor, AdmissionControl admissionControl) {
+        this.socketHandler = socketHandler;
+        this.handshakeInterceptor = handshakeInterceptor;
+        this.admissionControl = admissionControl;
+    }
+
     @Override
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
-        registry.addHandler(new SocketHandler(), "/socket")
+        registry.addHandler(socketHandler, "/socket")
+                // admission is checked first, so saturated node does not query the user
+                .addInterceptors(admissionControl, handshakeInterceptor)
                 .setAllowedOrigins("*");
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,292 @@
+package com.eltech.web.server.log;
+
+import com.eltech.web.server.metrics.MetricsSource;
+import com.eltech.web.server.metrics.PrometheusWriter;
+import com.google.gson.stream.JsonWriter;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Structured event log for hot paths. Callers only append an event into a lock-free ring buffer and never wait for IO,
+ * events are written as json lines to rotating files by a background writer.
+ * Events of the same kind are rate capped, so a flood of bad clients results in a few lines with suppressed counts,
+ * instead of a line per frame. Events are dropped, if the buffer is full.
+ */
+@Component
+public class EventLog implements MetricsSource {
+    public enum Level {
+        INFO, WARN, ERROR
+    }
+
+    private static final String FILE_NAME = "events";
+    // count of events in current second is stored in low bits of kind state, the second itself in high bits
+    private static final int COUNT_BITS = 20;
+    private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+    private static class Event {
+        final long time;
+        final Level level;
+        final String kind;
+        final String message;
+        final Throwable error;
+        final Object[] fields;
+        final long suppressedCount;
+
+        Event(long time, Level level, String kind, String message, Throwable error, Object[] fields, long suppressedCount) {
+            this.time = time;
+            this.level = level;
+            this.kind = kind;
+            this.message = message;
+            this.error = error;
+            this.fields = fields;
+            this.suppressedCount = suppressedCount;
+        }
+    }
+
+    private static class KindState {
+        final AtomicLong secondAndCount = new AtomicLong();
+        final AtomicLong suppressedCount = new AtomicLong();
+    }
+
+    private final EventLogProperties settings;
+    private final Map<String, KindState> kindStates = new ConcurrentHashMap<>();
+
+    // multi producer, single consumer ring, a claimed slot stays null until producer publishes its event
+    private final AtomicReferenceArray<Event> slots;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+
+    private final ScheduledExecutorService writerExecutor;
+    // accessed only from writer thread
+    private Writer fileWriter;
+    private long fileSize;
+
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong suppressedCount = new AtomicLong();
+
+    public EventLog(EventLogProperties settings) {
+        this.settings = settings;
+
+        int capacity = Integer.highestOneBit(Math.max(2, settings.getBufferSize()) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+
+        this.writerExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "event-log-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (settings.isEnabled()) {
+            writerExecutor.scheduleWithFixedDelay(this::drain, settings.getFlushIntervalMs(), settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @param fields alternating names and values of event fields
+     */
+    public void info(String kind, String message, Object... fields) {
+        log(Level.INFO, kind, message, null, fields);
+    }
+
+    public void warn(String kind, String message, Object... fields) {
+        log(Level.WARN, kind, message, null, fields);
+    }
+
+    public void error(String kind, String message, Throwable error, Object... fields) {
+        log(Level.ERROR, kind, message, error, fields);
+    }
+
+    public void log(Level level, String kind, String message, Throwable error, Object... fields) {
+        if (!settings.isEnabled()) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        KindState state = kindStates.computeIfAbsent(kind, key -> new KindState());
+        if (!tryAcquire(state, now / 1000)) {
+            state.suppressedCount.incrementAndGet();
+            suppressedCount.incrementAndGet();
+            return;
+        }
+
+        Event event = new Event(now, level, kind, message, error, fields, state.suppressedCount.getAndSet(0));
+        long position;
+        do {
+            position = tail.get();
+            if (position - head >= slots.length()) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+        } while (!tail.compareAndSet(position, position + 1));
+        slots.set((int) (position & mask), event);
+    }
+
+    private boolean tryAcquire(KindState state, long second) {
+        int limit = settings.getMaxPerKindPerSecond();
+        while (true) {
+            long current = state.secondAndCount.get();
+            long next;
+            if (current >>> COUNT_BITS != second) {
+                next = (second << COUNT_BITS) | 1;
+            } else if ((current & COUNT_MASK) >= limit) {
+                return false;
+            } else {
+                next = current + 1;
+            }
+            if (state.secondAndCount.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            Event event;
+            while ((event = slots.get((int) (head & mask))) != null) {
+                slots.set((int) (head & mask), null);
+                head++;
+                write(event);
+            }
+            if (fileWriter != null) {
+                fileWriter.flush();
+            }
+        } catch (IOException | RuntimeException e) {
+            // there is nowhere else to report it, file will be reopened on the next drain
+            System.err.println("event log write failed: " + e);
+            closeFile();
+        }
+    }
+
+    private void write(Event event) throws IOException {
+        StringWriter line = new StringWriter(256);
+        JsonWriter json = new JsonWriter(line);
+        json.beginObject();
+        json.name("time").value(Instant.ofEpochMilli(event.time).toString());
+        json.name("level").value(event.level.name());
+        json.name("kind").value(event.kind);
+        json.name("message").value(event.message);
+        if (event.fields != null) {
+            for (int i = 0; i + 1 < event.fields.length; i += 2) {
+                json.name(String.valueOf(event.fields[i]));
+                Object value = event.fields[i + 1];
+                if (value instanceof Number) {
+                    json.value((Number) value);
+                } else {
+                    json.value(value != null ? value.toString() : null);
+                }
+            }
+        }
+        if (event.suppressedCount > 0) {
+            json.name("suppressed").value(event.suppressedCount);
+        }
+        if (event.error != null) {
+            json.name("error").value(event.error.toString());
+            if (event.level == Level.ERROR) {
+                StringWriter stackTrace = new StringWriter();
+                event.error.printStackTrace(new PrintWriter(stackTrace));
+                json.name("stackTrace").value(stackTrace.toString());
+            }
+        }
+        json.endObject();
+        json.flush();
+        String text = line.append('\n').toString();
+
+        int size = text.getBytes(StandardCharsets.UTF_8).length;
+        if (fileWriter == null || fileSize + size > settings.getMaxFileBytes()) {
+            openFile(fileWriter != null);
+        }
+        fileWriter.write(text);
+        fileSize += size;
+        writtenCount.incrementAndGet();
+    }
+
+    private void openFile(boolean rotate) throws IOException {
+        closeFile();
+        Path directory = Paths.get(settings.getDirectory());
+        Files.createDirectories(directory);
+        Path current = directory.resolve(FILE_NAME + ".log");
+
+        if (rotate || (Files.exists(current) && Files.size(current) >= settings.getMaxFileBytes())) {
+            Files.deleteIfExists(directory.resolve(FILE_NAME + "." + settings.getMaxFiles() + ".log"));
+            for (int i = settings.getMaxFiles() - 1; i >= 1; i--) {
+                Path rotated = directory.resolve(FILE_NAME + "." + i + ".log");
+                if (Files.exists(rotated)) {
+                    Files.move(rotated, directory.resolve(FILE_NAME + "." + (i + 1) + ".log"), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            if (Files.exists(current)) {
+                Files.move(current, directory.resolve(FILE_NAME + ".1.log"), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        fileWriter = Files.newBufferedWriter(current, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileSize = Files.size(current);
+    }
+
+    private void closeFile() {
+        if (fileWriter != null) {
+            try {
+                fileWriter.close();
+            } catch (IOException ignore) {
+                // nothing to do with it
+            }
+            fileWriter = null;
+        }
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSuppressedCount() {
+        return suppressedCount.get();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.counter("event_log_written_total", writtenCount.get());
+        writer.counter("event_log_dropped_total", droppedCount.get());
+        writer.counter("event_log_suppressed_total", suppressedCount.get());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        writerExecutor.shutdown();
+        try {
+            writerExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (settings.isEnabled()) {
+            // events, appended before shutdown, are written by this thread, writer is stopped
+            drain();
+        }
+        closeFile();
+    }
+}
@@ -0,0 +1,79 @@
+package com.eltech.web.server.log;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "event-log")
+public class EventLogProperties {
+    // when disabled, events are counted and discarded
+    private boolean enabled = true;
+    // directory of log files, current file is events.log, rotated ones are events.1.log, events.2.log, ...
+    private String directory = "logs";
+    // current file is rotated, when it grows above this size
+    private long maxFileBytes = 16 * 1024 * 1024;
+    // rotated files, that are kept
+    private int maxFiles = 5;
+    // capacity of the ring buffer, events are dropped, when writer does not keep up
+    private int bufferSize = 8192;
+    // events of the same kind above this rate are not written, their count is reported with the next written one
+    private int maxPerKindPerSecond = 10;
+    // interval, writer flushes buffered events to file
+    private long flushIntervalMs = 200;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    public void setMaxFileBytes(long maxFileBytes) {
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    public void setMaxFiles(int maxFiles) {
+        this.maxFiles = maxFiles;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    public int getMaxPerKindPerSecond() {
+        return maxPerKindPerSecond;
+    }
+
+    public void setMaxPerKindPerSecond(int maxPerKindPerSecond) {
+        this.maxPerKindPerSecond = maxPerKindPerSecond;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+}
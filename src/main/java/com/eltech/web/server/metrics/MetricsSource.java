@@ -0,0 +1,9 @@
+package com.eltech.web.server.metrics;
+
+/**
+ * Component, that exports its own metrics, all beans of this type are written on each scrape of /metrics.
+ * Values are only read here, so writing them must not block.
+ */
+public interface MetricsSource {
+    void writeMetrics(PrometheusWriter writer);
+}
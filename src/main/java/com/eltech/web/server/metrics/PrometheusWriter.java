@@ -0,0 +1,55 @@
+package com.eltech.web.server.metrics;
+
+/**
+ * Builds a response in prometheus text exposition format
+ */
+public class PrometheusWriter {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder builder;
+
+    public PrometheusWriter(int capacity) {
+        this.builder = new StringBuilder(capacity);
+    }
+
+    public void counter(String name, long value) {
+        type(name, "counter");
+        value(name, value);
+    }
+
+    public void gauge(String name, long value) {
+        type(name, "gauge");
+        value(name, value);
+    }
+
+    public void gauge(String name, double value) {
+        type(name, "gauge");
+        value(name, value);
+    }
+
+    // type line has to precede all samples of the metric
+    public void type(String name, String type) {
+        builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    public void value(String name, long value) {
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+
+    public void value(String name, double value) {
+        builder.append(name).append(' ').append(value).append('\n');
+    }
+
+    public void sample(String name, String label, String labelValue, long value) {
+        builder.append(name).append('{').append(label).append("=\"").append(labelValue).append("\"} ").append(value).append('\n');
+    }
+
+    public void sample(String name, String label, String labelValue, double value) {
+        builder.append(name).append('{').append(label).append("=\"").append(labelValue).append("\"} ").append(value).append('\n');
+    }
+
+    @Override
+    public String toString() {
+        return builder.toString();
+    }
+}
@@ -0,0 +1,86 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits load, a single client or all of them can put on the node: rejects handshakes, when node is saturated,
+ * limits sessions per uid and provides per session rate limits of relayed frames
+ */
+@Component
+public class AdmissionControl implements HandshakeInterceptor {
+    private final SessionDirectory sessionDirectory;
+    private final SignalingProperties.Limits settings;
+
+    private final AtomicLong rejectedHandshakeCount = new AtomicLong();
+    private final AtomicLong rejectedSessionCount = new AtomicLong();
+    private final AtomicLong throttledSdpCount = new AtomicLong();
+    private final AtomicLong throttledCandidateCount = new AtomicLong();
+
+    public AdmissionControl(SessionDirectory sessionDirectory, SignalingProperties properties) {
+        this.sessionDirectory = sessionDirectory;
+        this.settings = properties.getLimits();
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        if (settings.getMaxConnections() > 0 && sessionDirectory.getSessionCount() >= settings.getMaxConnections()) {
+            rejectedHandshakeCount.incrementAndGet();
+            response.setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception exception) {
+
+    }
+
+    int getMaxSessionsPerUid() {
+        return settings.getMaxSessionsPerUid();
+    }
+
+    TokenBucket createSdpBucket() {
+        return new TokenBucket(settings.getSdpPerSecond(), settings.getSdpBurst());
+    }
+
+    TokenBucket createCandidateBucket() {
+        return new TokenBucket(settings.getCandidatesPerSecond(), settings.getCandidateBurst());
+    }
+
+    void onSessionRejected() {
+        rejectedSessionCount.incrementAndGet();
+    }
+
+    void onSdpThrottled() {
+        throttledSdpCount.incrementAndGet();
+    }
+
+    void onCandidateThrottled() {
+        throttledCandidateCount.incrementAndGet();
+    }
+
+    public long getRejectedHandshakeCount() {
+        return rejectedHandshakeCount.get();
+    }
+
+    public long getRejectedSessionCount() {
+        return rejectedSessionCount.get();
+    }
+
+    public long getThrottledSdpCount() {
+        return throttledSdpCount.get();
+    }
+
+    public long getThrottledCandidateCount() {
+        return throttledCandidateCount.get();
+    }
+}
@@ -0,0 +1,211 @@
+package com.eltech.web.server.socket;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Binary sub-protocol for sdp and candidate frames, negotiated at handshake with {@link #PROTOCOL}:
+ * [type: 1 byte][sender uid: 16 bytes][target uid: 16 bytes][payload length: 4 bytes][payload].
+ * Uids are uuids in big endian, payload is utf-8 json object with all other fields of the text frame payload.
+ * Frames are routed on the header and two payload fields, that are read in a single pass:
+ * targetSessionId, that addresses a single device session of the target, as in text frames, and the description type of sdp.
+ * Session id stays in the payload, so the header keeps fixed size and conversion between protocols copies it as is.
+ * Binary clients send and receive all other frames (peer_init, room, session, presence, ...) as text.
+ */
+class BinarySignalingFrame {
+    public static final String PROTOCOL = "signaling-binary-v1";
+
+    static final byte TYPE_SDP = 1;
+    static final byte TYPE_CANDIDATE = 2;
+    static final int HEADER_SIZE = 1 + 16 + 16 + 4;
+
+    byte type;
+    String senderUid;
+    String targetUid;
+    // read from payload by readPayload
+    String targetSessionId;
+    boolean offer;
+
+    /**
+     * @return parsed header or null, if frame is malformed
+     */
+    static BinarySignalingFrame parse(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int position = buffer.position();
+        byte type = buffer.get(position);
+        if (type != TYPE_SDP && type != TYPE_CANDIDATE) {
+            return null;
+        }
+        int payloadLength = buffer.getInt(position + 33);
+        if (payloadLength != buffer.remaining() - HEADER_SIZE) {
+            return null;
+        }
+
+        BinarySignalingFrame frame = new BinarySignalingFrame();
+        frame.type = type;
+        frame.senderUid = new UUID(buffer.getLong(position + 1), buffer.getLong(position + 9)).toString();
+        frame.targetUid = new UUID(buffer.getLong(position + 17), buffer.getLong(position + 25)).toString();
+        return frame;
+    }
+
+    /**
+     * Reads target session id and, for sdp, the description type from payload of the parsed frame
+     */
+    void readPayload(ByteBuffer buffer) {
+        String body = StandardCharsets.UTF_8.decode(buffer.slice().position(HEADER_SIZE)).toString();
+        try (JsonReader reader = new JsonReader(new StringReader(body))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("targetSessionId".equals(name) && reader.peek() == JsonToken.STRING) {
+                    targetSessionId = reader.nextString();
+                } else if ("sdp".equals(name) && type == TYPE_SDP) {
+                    offer = SignalingFrame.isOffer(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        } catch (IOException | IllegalStateException e) {
+            // payload is forwarded as is, even if it is not valid json
+        }
+    }
+
+    String getEventType() {
+        return type == TYPE_SDP ? SocketHandler.EVENT_SDP : SocketHandler.EVENT_CANDIDATE;
+    }
+
+    /**
+     * Converts binary frame to the text frame, that carries the same payload
+     */
+    static TextMessage toText(BinaryMessage message) {
+        BinarySignalingFrame frame = parse(message.getPayload());
+        if (frame == null) {
+            return null;
+        }
+        ByteBuffer buffer = message.getPayload();
+        String body = StandardCharsets.UTF_8.decode(buffer.slice().position(HEADER_SIZE)).toString().trim();
+
+        StringBuilder builder = new StringBuilder(body.length() + 128)
+                .append("{\"type\":\"").append(frame.getEventType())
+                .append("\",\"payload\":{\"senderUid\":\"").append(frame.senderUid)
+                .append("\",\"targetUid\":\"").append(frame.targetUid).append('"');
+        // other payload fields are spliced in as is
+        if (body.length() > 2 && body.charAt(0) == '{') {
+            builder.append(',').append(body, 1, body.length());
+        } else {
+            builder.append('}');
+        }
+        return new TextMessage(builder.append('}').toString());
+    }
+
+    /**
+     * Converts sdp or candidate text frame to binary one, payload fields are copied in a single streaming pass
+     * @return null, if text frame can not be expressed in binary protocol
+     */
+    static BinaryMessage toBinary(TextMessage message) {
+        String type = null;
+        String senderUid = null;
+        String targetUid = null;
+        StringWriter body = new StringWriter(message.getPayloadLength());
+        try (JsonReader reader = new JsonReader(new StringReader(message.getPayload()))) {
+            JsonWriter writer = new JsonWriter(body);
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("type".equals(name) && reader.peek() == JsonToken.STRING) {
+                    type = reader.nextString();
+                } else if ("payload".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    reader.beginObject();
+                    writer.beginObject();
+                    while (reader.hasNext()) {
+                        String field = reader.nextName();
+                        if ("senderUid".equals(field) && reader.peek() == JsonToken.STRING) {
+                            senderUid = reader.nextString();
+                        } else if ("targetUid".equals(field) && reader.peek() == JsonToken.STRING) {
+                            targetUid = reader.nextString();
+                        } else {
+                            writer.name(field);
+                            copyValue(reader, writer);
+                        }
+                    }
+                    reader.endObject();
+                    writer.endObject();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            writer.flush();
+
+            byte binaryType;
+            if (SocketHandler.EVENT_SDP.equals(type)) {
+                binaryType = TYPE_SDP;
+            } else if (SocketHandler.EVENT_CANDIDATE.equals(type)) {
+                binaryType = TYPE_CANDIDATE;
+            } else {
+                return null;
+            }
+            if (senderUid == null || targetUid == null) {
+                return null;
+            }
+            return new BinaryMessage(encode(binaryType, UUID.fromString(senderUid), UUID.fromString(targetUid),
+                    body.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void copyValue(JsonReader reader, JsonWriter writer) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT -> {
+                reader.beginObject();
+                writer.beginObject();
+                while (reader.hasNext()) {
+                    writer.name(reader.nextName());
+                    copyValue(reader, writer);
+                }
+                reader.endObject();
+                writer.endObject();
+            }
+            case BEGIN_ARRAY -> {
+                reader.beginArray();
+                writer.beginArray();
+                while (reader.hasNext()) {
+                    copyValue(reader, writer);
+                }
+                reader.endArray();
+                writer.endArray();
+            }
+            case STRING -> writer.value(reader.nextString());
+            // numbers are copied as written, without converting them to double
+            case NUMBER -> writer.jsonValue(reader.nextString());
+            case BOOLEAN -> writer.value(reader.nextBoolean());
+            case NULL -> {
+                reader.nextNull();
+                writer.nullValue();
+            }
+            default -> reader.skipValue();
+        }
+    }
+
+    static byte[] encode(byte type, UUID senderUid, UUID targetUid, byte[] payload) {
+        return ByteBuffer.allocate(HEADER_SIZE + payload.length)
+                .put(type)
+                .putLong(senderUid.getMostSignificantBits()).putLong(senderUid.getLeastSignificantBits())
+                .putLong(targetUid.getMostSignificantBits()).putLong(targetUid.getLeastSignificantBits())
+                .putInt(payload.length)
+                .put(payload)
+                .array();
+    }
+}
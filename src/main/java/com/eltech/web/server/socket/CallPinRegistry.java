@@ -0,0 +1,201 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Chooses sessions of target uid, a frame is delivered to.
+ * Frame with targetSessionId goes only to that session. Otherwise, once a session of the target answered
+ * the sender, the call is pinned to it and later frames of the sender go only there, instead of all devices of the target.
+ * An sdp offer starts a new call, so it ignores and drops the pin and rings all devices of the target again,
+ * offers, that renegotiate an ongoing call, should address the answering session with targetSessionId.
+ * Pin is released, when the session is closed, or when there is no traffic between the two uids for a while,
+ * idle pins are purged periodically on the timer wheel of the reaper.
+ */
+@Component
+public class CallPinRegistry implements SessionListener {
+    private static class Pin {
+        final String sessionId;
+        volatile long lastUsedTime;
+
+        Pin(String sessionId, long lastUsedTime) {
+            this.sessionId = sessionId;
+            this.lastUsedTime = lastUsedTime;
+        }
+    }
+
+    private final SessionDirectory sessionDirectory;
+    private final TimerWheel timerWheel;
+    private final long idleMs;
+
+    // "caller uid \n callee uid" -> session of callee, that answered
+    private final Map<String, Pin> pins = new ConcurrentHashMap<>();
+    // session id -> keys of pins to it, so closed sessions release pins without a scan,
+    // keys are added under the lock of the pin key and of the session id, the latter is also taken by removal of the session
+    private final Map<String, Set<String>> pinKeysBySessionId = new ConcurrentHashMap<>();
+
+    private final AtomicLong broadcastCount = new AtomicLong();
+    private final AtomicLong pinnedCount = new AtomicLong();
+    private final AtomicLong addressedCount = new AtomicLong();
+
+    public CallPinRegistry(SessionDirectory sessionDirectory, SessionReaper sessionReaper, SignalingProperties properties) {
+        this.sessionDirectory = sessionDirectory;
+        this.timerWheel = sessionReaper.getTimerWheel();
+        this.idleMs = properties.getCallPinning().getIdleMs();
+        sessionDirectory.addListener(this);
+        schedulePurge();
+    }
+
+    /**
+     * @param offer frame starts a new call, so it is not delivered to the pinned session only
+     * @return sessions to deliver frame from sender to target uid, empty if target has no local sessions
+     */
+    PeerSession[] selectTargets(String senderUid, String targetUid, String targetSessionId, boolean offer) {
+        if (targetSessionId != null) {
+            PeerSession target = sessionDirectory.getBySessionId(targetSessionId);
+            if (target != null && targetUid.equals(target.getPeerUid())) {
+                addressedCount.incrementAndGet();
+                return new PeerSession[] { target };
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        Pin pin = offer ? null : pins.get(pinKey(senderUid, targetUid));
+        if (pin != null && now - pin.lastUsedTime < idleMs) {
+            PeerSession target = sessionDirectory.getBySessionId(pin.sessionId);
+            if (target != null && targetUid.equals(target.getPeerUid())) {
+                pin.lastUsedTime = now;
+                pinnedCount.incrementAndGet();
+                return new PeerSession[] { target };
+            }
+        }
+
+        PeerSession[] targets = sessionDirectory.getByUid(targetUid);
+        if (targets.length > 0) {
+            broadcastCount.incrementAndGet();
+        }
+        return targets;
+    }
+
+    /**
+     * Sender session answered target uid, so frames of target uid to sender uid are pinned to this session
+     * @param offer sender starts a new call from this session, so it replaces any pin
+     */
+    void onRelayed(PeerSession sender, String targetUid, boolean offer) {
+        String key = pinKey(targetUid, sender.getPeerUid());
+        long now = System.currentTimeMillis();
+        // frames of an ongoing call only refresh the pin, without taking the lock
+        Pin current = pins.get(key);
+        if (!offer && current != null && current.sessionId.equals(sender.getSessionId()) && now - current.lastUsedTime < idleMs) {
+            current.lastUsedTime = now;
+            return;
+        }
+
+        if (offer) {
+            // until a device of the target answers the new call, frames of the sender go to all of them
+            pins.computeIfPresent(pinKey(sender.getPeerUid(), targetUid), (k, pin) -> {
+                unindex(pin.sessionId, k);
+                return null;
+            });
+        }
+
+        pins.compute(key, (k, pin) -> {
+            if (offer || pin == null || now - pin.lastUsedTime >= idleMs || sessionDirectory.getBySessionId(pin.sessionId) == null) {
+                if (pin != null) {
+                    unindex(pin.sessionId, key);
+                }
+                // sender could be removed meanwhile, then its pins were already released and nothing is pinned to it
+                return index(sender.getSessionId(), key) ? new Pin(sender.getSessionId(), now) : null;
+            }
+            if (pin.sessionId.equals(sender.getSessionId())) {
+                pin.lastUsedTime = now;
+            }
+            return pin;
+        });
+    }
+
+    @Override
+    public void onSessionRemoved(String uid, String sessionId) {
+        Set<String> keys = pinKeysBySessionId.remove(sessionId);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            pins.computeIfPresent(key, (k, pin) -> pin.sessionId.equals(sessionId) ? null : pin);
+        }
+    }
+
+    // session is checked under the lock of its id, so removal of the session either sees the key or happens before the check
+    private boolean index(String sessionId, String key) {
+        boolean[] indexed = { false };
+        pinKeysBySessionId.compute(sessionId, (id, keys) -> {
+            if (sessionDirectory.getBySessionId(id) == null) {
+                return keys;
+            }
+            if (keys == null) {
+                keys = ConcurrentHashMap.newKeySet();
+            }
+            keys.add(key);
+            indexed[0] = true;
+            return keys;
+        });
+        return indexed[0];
+    }
+
+    private void unindex(String sessionId, String key) {
+        pinKeysBySessionId.computeIfPresent(sessionId, (id, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    // pins of calls, that ended without closing the session, are dropped here
+    private void purgeIdle() {
+        long now = System.currentTimeMillis();
+        for (String key : pins.keySet()) {
+            pins.computeIfPresent(key, (k, pin) -> {
+                if (now - pin.lastUsedTime < idleMs) {
+                    return pin;
+                }
+                unindex(pin.sessionId, k);
+                return null;
+            });
+        }
+    }
+
+    private void schedulePurge() {
+        timerWheel.schedule(() -> {
+            purgeIdle();
+            schedulePurge();
+        }, Math.max(100, idleMs / 2));
+    }
+
+    private static String pinKey(String callerUid, String calleeUid) {
+        return callerUid + '\n' + calleeUid;
+    }
+
+    public int getPinCount() {
+        return pins.size();
+    }
+
+    // sessions, that at least one pin points to
+    public int getPinnedSessionCount() {
+        return pinKeysBySessionId.size();
+    }
+
+    public long getBroadcastCount() {
+        return broadcastCount.get();
+    }
+
+    public long getPinnedCount() {
+        return pinnedCount.get();
+    }
+
+    public long getAddressedCount() {
+        return addressedCount.get();
+    }
+}
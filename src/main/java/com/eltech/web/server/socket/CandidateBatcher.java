@@ -0,0 +1,154 @@
+package com.eltech.web.server.socket;
+
+import com.google.gson.Gson;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects trickle ice candidates of each sender to target pair during a short window and delivers them
+ * as a single candidates frame: {"type": "candidates", "payload": {"senderUid", "targetUid", "frames": [original frames]}}.
+ * Target sessions, that did not ask for batches in peer_init, receive original frames one by one.
+ */
+@Component
+public class CandidateBatcher {
+    public static final String EVENT_CANDIDATES = "candidates";
+
+    private static class Batch {
+        final String senderUid;
+        final String targetUid;
+        final String targetSessionId;
+        final List<TextMessage> frames = new ArrayList<>();
+
+        Batch(String senderUid, String targetUid, String targetSessionId) {
+            this.senderUid = senderUid;
+            this.targetUid = targetUid;
+            this.targetSessionId = targetSessionId;
+        }
+    }
+
+    private final SessionDirectory sessionDirectory;
+    private final ClusterRouter clusterRouter;
+    private final PendingFrameBuffer pendingFrameBuffer;
+    private final CallPinRegistry callPinRegistry;
+    private final SignalingProperties.CandidateBatching settings;
+    private final ScheduledExecutorService scheduler;
+    private final Gson gson = new Gson();
+
+    private final Map<String, Batch> batches = new ConcurrentHashMap<>();
+
+    public CandidateBatcher(SessionDirectory sessionDirectory, ClusterRouter clusterRouter, PendingFrameBuffer pendingFrameBuffer,
+                            CallPinRegistry callPinRegistry, SignalingProperties properties) {
+        this.sessionDirectory = sessionDirectory;
+        this.clusterRouter = clusterRouter;
+        this.pendingFrameBuffer = pendingFrameBuffer;
+        this.callPinRegistry = callPinRegistry;
+        this.settings = properties.getCandidateBatching();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "socket-candidate-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return settings.isEnabled();
+    }
+
+    void add(String senderUid, String targetUid, String targetSessionId, TextMessage message) {
+        String key = senderUid + '\n' + targetUid + '\n' + (targetSessionId != null ? targetSessionId : "");
+        boolean[] created = { false };
+        batches.compute(key, (k, batch) -> {
+            if (batch == null) {
+                batch = new Batch(senderUid, targetUid, targetSessionId);
+                created[0] = true;
+            }
+            batch.frames.add(message);
+            return batch;
+        });
+
+        if (created[0]) {
+            try {
+                scheduler.schedule(() -> flush(key), settings.getWindowMs(), TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flush(key);
+            }
+        }
+    }
+
+    private void flush(String key) {
+        Batch batch = batches.remove(key);
+        if (batch == null) {
+            return;
+        }
+
+        // candidates follow frames, that are still kept for the target, one by one
+        if (pendingFrameBuffer.addIfPending(batch.targetUid, batch.targetSessionId, batch.frames.get(0), true)) {
+            for (int i = 1; i < batch.frames.size(); i++) {
+                pendingFrameBuffer.addIfPending(batch.targetUid, batch.targetSessionId, batch.frames.get(i), true);
+            }
+            return;
+        }
+
+        // targets are selected at flush, so candidates, that were collected before the call was answered, follow the pin
+        PeerSession[] targets = callPinRegistry.selectTargets(batch.senderUid, batch.targetUid, batch.targetSessionId, false);
+        if (targets.length == 0) {
+            for (TextMessage frame : batch.frames) {
+                clusterRouter.routeToAbsentUid(batch.targetUid, frame, true);
+            }
+            return;
+        }
+
+        TextMessage batchMessage = null;
+        RelayFrame[] frames = null;
+        for (PeerSession target : targets) {
+            if (target.isAcceptingCandidateBatches() && batch.frames.size() > 1) {
+                if (batchMessage == null) {
+                    batchMessage = toBatchMessage(batch);
+                }
+                target.send(batchMessage, true);
+            } else {
+                // each candidate is converted once for all targets of the binary protocol
+                if (frames == null) {
+                    frames = new RelayFrame[batch.frames.size()];
+                    for (int i = 0; i < frames.length; i++) {
+                        frames[i] = new RelayFrame(batch.frames.get(i));
+                    }
+                }
+                for (RelayFrame frame : frames) {
+                    target.send(frame, true);
+                }
+            }
+        }
+    }
+
+    private TextMessage toBatchMessage(Batch batch) {
+        // original frames are embedded as is, without parsing them again
+        StringBuilder builder = new StringBuilder("{\"type\":\"" + EVENT_CANDIDATES + "\",\"payload\":{\"senderUid\":")
+                .append(gson.toJson(batch.senderUid))
+                .append(",\"targetUid\":")
+                .append(gson.toJson(batch.targetUid))
+                .append(",\"frames\":[");
+        for (int i = 0; i < batch.frames.size(); i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(batch.frames.get(i).getPayload());
+        }
+        return new TextMessage(builder.append("]}}").toString());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,122 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.user.event.ChatChangeEvent;
+import com.google.gson.Gson;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.socket.TextMessage;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers chat changes to open sockets of affected users, so clients do not have to poll chat list.
+ * Changes are batched per recipient during a short window, repeated changes of the same kind
+ * of the same chat are collapsed to the latest one.
+ */
+@Component
+public class ChatChangeDispatcher {
+    public static final String EVENT_CHAT_CHANGES = "chat_changes";
+
+    private static class Change {
+        final ChatChangeEvent.Kind kind;
+        final String chatId;
+        final String chatName;
+        final String memberUid;
+        final long lastActivityTime;
+
+        Change(ChatChangeEvent event) {
+            this.kind = event.getKind();
+            this.chatId = event.getChatId();
+            this.chatName = event.getChatName();
+            this.memberUid = event.getMemberUid();
+            this.lastActivityTime = event.getLastActivityTime();
+        }
+
+        String getCollapseKey() {
+            return switch (kind) {
+                case MEMBER_JOINED, MEMBER_LEFT -> chatId + ":" + kind + ":" + memberUid;
+                default -> chatId + ":" + kind;
+            };
+        }
+    }
+
+    private static class ChatChangesFrame {
+        final String type = EVENT_CHAT_CHANGES;
+        final Map<String, Object> payload;
+
+        ChatChangesFrame(List<Change> changes) {
+            this.payload = Map.of("changes", changes);
+        }
+    }
+
+    private final SessionDirectory sessionDirectory;
+    private final EventLog eventLog;
+    private final ScheduledExecutorService scheduler;
+    private final Gson gson = new Gson();
+
+    // recipient uid -> changes by collapse key
+    private final Map<String, Map<String, Change>> pendingChanges = new ConcurrentHashMap<>();
+
+    public ChatChangeDispatcher(SessionDirectory sessionDirectory, SignalingProperties properties, EventLog eventLog) {
+        this.sessionDirectory = sessionDirectory;
+        this.eventLog = eventLog;
+
+        long windowMs = properties.getChatChanges().getWindowMs();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "socket-chat-changes");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, windowMs, windowMs, TimeUnit.MILLISECONDS);
+    }
+
+    // changes are delivered only after commit, rolled back changes are never pushed
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChatChange(ChatChangeEvent event) {
+        Change change = new Change(event);
+        for (String recipient : event.getRecipientUids()) {
+            // offline users will get actual state with the chat list
+            if (!sessionDirectory.isOnline(recipient)) {
+                continue;
+            }
+            pendingChanges.compute(recipient, (key, changes) -> {
+                if (changes == null) {
+                    changes = new LinkedHashMap<>();
+                }
+                String collapseKey = change.getCollapseKey();
+                changes.remove(collapseKey);
+                changes.put(collapseKey, change);
+                return changes;
+            });
+        }
+    }
+
+    private void flush() {
+        try {
+            for (String recipient : pendingChanges.keySet()) {
+                Map<String, Change> changes = pendingChanges.remove(recipient);
+                if (changes != null && !changes.isEmpty()) {
+                    TextMessage message = new TextMessage(gson.toJson(new ChatChangesFrame(new ArrayList<>(changes.values()))));
+                    sessionDirectory.sendToUid(recipient, message, false);
+                }
+            }
+        } catch (RuntimeException e) {
+            // flush must not stop the scheduler
+            eventLog.error("socket.chat_changes_flush_failed", "failed to push chat changes", e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
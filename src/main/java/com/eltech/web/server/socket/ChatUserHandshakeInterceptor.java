@@ -0,0 +1,58 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.user.entity.ChatUser;
+import com.eltech.web.server.user.service.UserService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Binds socket session to the uid of authenticated user once, at handshake,
+ * unauthenticated handshakes are rejected
+ */
+@Component
+public class ChatUserHandshakeInterceptor implements HandshakeInterceptor {
+    public static final String ATTRIBUTE_UID = "chatUserUid";
+
+    private final UserService userService;
+
+    public ChatUserHandshakeInterceptor(UserService userService) {
+        this.userService = userService;
+    }
+
+    static String getBoundUid(Map<String, Object> attributes) {
+        Object uid = attributes.get(ATTRIBUTE_UID);
+        return uid instanceof String ? (String) uid : null;
+    }
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        if (auth == null || !(auth.getPrincipal() instanceof ChatUser)) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        // uid could be changed after login, so it is taken from the database, not from the principal, only the uid is read
+        String uid = userService.fetchUid((ChatUser) auth.getPrincipal());
+        if (uid == null) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+
+        attributes.put(ATTRIBUTE_UID, uid);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler, Exception exception) {
+
+    }
+}
@@ -0,0 +1,235 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.socket.cluster.ClusterMessage;
+import com.eltech.web.server.socket.cluster.ClusterTransport;
+import com.eltech.web.server.socket.cluster.ConsistentHashRing;
+import com.eltech.web.server.socket.cluster.InProcessClusterTransport;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes signaling frames between nodes of a cluster.
+ * Each uid is owned by a node, chosen by consistent hashing, nodes register their online uids at owners,
+ * so a frame for a uid, that is not connected locally, is sent to the owner and forwarded by it to nodes with sessions of the uid.
+ * When nodes join or leave, only directory entries move to new owners, sessions and calls stay where they are.
+ * If a ClusterTransport bean exists, it is used, otherwise nodes communicate in process.
+ */
+@Component
+public class ClusterRouter implements SessionListener, ClusterTransport.Listener {
+    private final SessionDirectory sessionDirectory;
+    private final PendingFrameBuffer pendingFrameBuffer;
+    private final SignalingMetrics metrics;
+    private final boolean enabled;
+    private final String localNodeId;
+    private final ClusterTransport transport;
+
+    private volatile ConsistentHashRing ring;
+    // uids, owned by this node -> nodes, that have sessions of the uid
+    private final Map<String, Set<String>> nodesByOwnedUid = new ConcurrentHashMap<>();
+    // registrations of a uid are sent under the per-key lock of this map, entries exist only while they are sent
+    private final Map<String, Boolean> registeringUids = new ConcurrentHashMap<>();
+
+    private final AtomicLong forwardedCount = new AtomicLong();
+    private final AtomicLong receivedCount = new AtomicLong();
+    private final AtomicLong unroutableCount = new AtomicLong();
+
+    public ClusterRouter(SessionDirectory sessionDirectory, PendingFrameBuffer pendingFrameBuffer, SignalingMetrics metrics,
+                         SignalingProperties properties, EventLog eventLog, ObjectProvider<ClusterTransport> transportProvider) {
+        this.sessionDirectory = sessionDirectory;
+        this.pendingFrameBuffer = pendingFrameBuffer;
+        this.metrics = metrics;
+
+        SignalingProperties.Cluster settings = properties.getCluster();
+        this.enabled = settings.isEnabled();
+        this.localNodeId = settings.getNodeId();
+        this.ring = new ConsistentHashRing(Collections.singleton(localNodeId));
+
+        if (enabled) {
+            this.transport = transportProvider.getIfAvailable(() -> new InProcessClusterTransport(settings.getName(), eventLog));
+            sessionDirectory.addListener(this);
+            transport.start(localNodeId, this);
+        } else {
+            this.transport = null;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getLocalNodeId() {
+        return localNodeId;
+    }
+
+    public Set<String> getNodes() {
+        return ring.getNodes();
+    }
+
+    /**
+     * Delivers frame to a uid, that has no local sessions: it is forwarded to the node, owning the uid,
+     * or, without cluster, kept until the uid connects. Only rejected frames are counted as drops
+     * @return false, if frame was rejected, because it has no target uid or pending buffer is full
+     */
+    boolean routeToAbsentUid(String uid, WebSocketMessage<?> message, boolean droppable) {
+        if (uid == null) {
+            metrics.onDrop(SignalingMetrics.Drop.UNKNOWN_TARGET);
+            return false;
+        }
+        if (enabled && message instanceof TextMessage) {
+            forwardedCount.incrementAndGet();
+            metrics.onAbsentTarget(SignalingMetrics.AbsentTargetRoute.FORWARDED);
+            route(ClusterMessage.frame(localNodeId, uid, ((TextMessage) message).getPayload(), droppable));
+            return true;
+        }
+        return buffer(uid, message, droppable);
+    }
+
+    private boolean buffer(String uid, WebSocketMessage<?> message, boolean droppable) {
+        if (pendingFrameBuffer.add(uid, message, droppable)) {
+            metrics.onAbsentTarget(SignalingMetrics.AbsentTargetRoute.BUFFERED);
+            return true;
+        }
+        metrics.onDrop(SignalingMetrics.Drop.UNKNOWN_TARGET);
+        return false;
+    }
+
+    // messages for uids, owned by this node, also go through the transport, so the listener is only ever called by its single consumer
+    private void route(ClusterMessage message) {
+        transport.send(ring.getOwner(message.getUid()), message);
+    }
+
+    @Override
+    public void onMessage(ClusterMessage message) {
+        String uid = message.getUid();
+        switch (message.getKind()) {
+            case REGISTER -> {
+                nodesByOwnedUid.compute(uid, (key, nodes) -> {
+                    if (nodes == null) {
+                        nodes = ConcurrentHashMap.newKeySet();
+                    }
+                    nodes.add(message.getSenderNodeId());
+                    return nodes;
+                });
+                // frames, that came before the uid connected anywhere, are passed to its node
+                if (!localNodeId.equals(message.getSenderNodeId())) {
+                    pendingFrameBuffer.drain(uid, (frame, droppable) -> {
+                        transport.send(message.getSenderNodeId(), ClusterMessage.frame(localNodeId, uid, ((TextMessage) frame).getPayload(), droppable).forwardedBy(localNodeId));
+                        return true;
+                    });
+                }
+            }
+            case UNREGISTER -> nodesByOwnedUid.computeIfPresent(uid, (key, nodes) -> {
+                nodes.remove(message.getSenderNodeId());
+                return nodes.isEmpty() ? null : nodes;
+            });
+            case FRAME -> {
+                if (message.isForwarded()) {
+                    deliverLocally(message);
+                    return;
+                }
+                Set<String> nodes = nodesByOwnedUid.get(uid);
+                if (nodes == null || nodes.isEmpty()) {
+                    // uid is not connected anywhere yet, owner keeps the frame until it registers
+                    unroutableCount.incrementAndGet();
+                    buffer(uid, new TextMessage(message.getPayload()), message.isDroppable());
+                    return;
+                }
+                for (String node : nodes) {
+                    if (localNodeId.equals(node)) {
+                        deliverLocally(message);
+                    } else {
+                        transport.send(node, message.forwardedBy(localNodeId));
+                    }
+                }
+            }
+        }
+    }
+
+    private void deliverLocally(ClusterMessage message) {
+        receivedCount.incrementAndGet();
+        TextMessage frame = new TextMessage(message.getPayload());
+        if (pendingFrameBuffer.addIfPending(message.getUid(), null, frame, message.isDroppable())) {
+            return;
+        }
+        if (sessionDirectory.sendToUid(message.getUid(), frame, message.isDroppable()) == 0) {
+            pendingFrameBuffer.add(message.getUid(), frame, message.isDroppable());
+        }
+    }
+
+    @Override
+    public void onNodeJoined(String nodeId) {
+        ring = ring.withNode(nodeId);
+        rebalance();
+    }
+
+    @Override
+    public void onNodeLeft(String nodeId) {
+        ring = ring.withoutNode(nodeId);
+        nodesByOwnedUid.forEach((uid, nodes) -> nodes.remove(nodeId));
+        nodesByOwnedUid.values().removeIf(Set::isEmpty);
+        rebalance();
+    }
+
+    // owners of some uids changed, so local uids are registered at their current owners and entries of not owned uids are dropped
+    private void rebalance() {
+        nodesByOwnedUid.keySet().removeIf(uid -> !localNodeId.equals(ring.getOwner(uid)));
+        for (String uid : sessionDirectory.getOnlineUids()) {
+            syncRegistration(uid);
+        }
+    }
+
+    @Override
+    public void onUidOnline(String uid) {
+        syncRegistration(uid);
+    }
+
+    @Override
+    public void onUidOffline(String uid) {
+        syncRegistration(uid);
+    }
+
+    /**
+     * Sends the current state of the uid to its owner. Uid goes online and offline on different threads,
+     * so the message is chosen by the state, read under the lock of the uid, not by the event:
+     * the last message, the owner receives, always follows the last change, so it is never left with a stale entry
+     */
+    private void syncRegistration(String uid) {
+        registeringUids.compute(uid, (key, ignored) -> {
+            route(sessionDirectory.isOnline(uid) ? ClusterMessage.register(localNodeId, uid) : ClusterMessage.unregister(localNodeId, uid));
+            return null;
+        });
+    }
+
+    public int getOwnedUidCount() {
+        return nodesByOwnedUid.size();
+    }
+
+    public long getForwardedCount() {
+        return forwardedCount.get();
+    }
+
+    public long getReceivedCount() {
+        return receivedCount.get();
+    }
+
+    public long getUnroutableCount() {
+        return unroutableCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (transport != null) {
+            transport.stop();
+        }
+    }
+}
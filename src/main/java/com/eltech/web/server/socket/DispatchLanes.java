@@ -0,0 +1,143 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed set of single threaded lanes, inbound frames are handled on. Frames are hashed onto a lane by key (sender uid),
+ * so frames of one sender are handled in the order, they were received, and container threads are released right away.
+ * With 0 lanes frames are handled on the calling thread.
+ * Failure of a task is logged and does not affect other tasks of the lane.
+ */
+@Component
+public class DispatchLanes {
+    private static class Lane {
+        final int index;
+        final ExecutorService executor;
+        final AtomicInteger depth = new AtomicInteger();
+        final AtomicLong dispatchedCount = new AtomicLong();
+        final AtomicLong rejectedCount = new AtomicLong();
+        final AtomicLong failedCount = new AtomicLong();
+        // time from dispatch till handling started
+        final AtomicLong totalWaitNanos = new AtomicLong();
+        final AtomicLong maxWaitNanos = new AtomicLong();
+        // time of handling itself
+        final AtomicLong totalRunNanos = new AtomicLong();
+
+        Lane(int index) {
+            this.index = index;
+            this.executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "socket-dispatch-" + index);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    private final SignalingProperties.Dispatch settings;
+    private final EventLog eventLog;
+    private final Lane[] lanes;
+
+    public DispatchLanes(SignalingProperties properties, EventLog eventLog) {
+        this.settings = properties.getDispatch();
+        this.eventLog = eventLog;
+        this.lanes = new Lane[Math.max(0, settings.getLanes())];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new Lane(i + 1);
+        }
+    }
+
+    /**
+     * Runs task on the lane of given key, tasks with the same key are run one by one in dispatch order
+     * @return false, if lane queue is full or lanes are shut down, task will not run
+     */
+    boolean dispatch(String key, Runnable task) {
+        if (lanes.length == 0) {
+            task.run();
+            return true;
+        }
+
+        Lane lane = lanes[Math.floorMod(key.hashCode(), lanes.length)];
+        if (lane.depth.incrementAndGet() > settings.getMaxQueuedPerLane()) {
+            lane.depth.decrementAndGet();
+            lane.rejectedCount.incrementAndGet();
+            return false;
+        }
+
+        long dispatchTime = System.nanoTime();
+        try {
+            lane.executor.execute(() -> {
+                long startTime = System.nanoTime();
+                lane.depth.decrementAndGet();
+                long waitNanos = startTime - dispatchTime;
+                lane.totalWaitNanos.addAndGet(waitNanos);
+                lane.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    // lane thread goes on with the next task
+                    lane.failedCount.incrementAndGet();
+                    eventLog.error("socket.dispatch_task_failed", "signaling frame handler failed", e, "lane", lane.index);
+                } finally {
+                    lane.totalRunNanos.addAndGet(System.nanoTime() - startTime);
+                    lane.dispatchedCount.incrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            lane.depth.decrementAndGet();
+            lane.rejectedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getQueueDepth(int lane) {
+        return lanes[lane].depth.get();
+    }
+
+    public long getDispatchedCount(int lane) {
+        return lanes[lane].dispatchedCount.get();
+    }
+
+    public long getRejectedCount(int lane) {
+        return lanes[lane].rejectedCount.get();
+    }
+
+    public long getFailedCount(int lane) {
+        return lanes[lane].failedCount.get();
+    }
+
+    public double getAverageWaitMs(int lane) {
+        long count = lanes[lane].dispatchedCount.get();
+        return count > 0 ? lanes[lane].totalWaitNanos.get() / 1e6 / count : 0;
+    }
+
+    public double getMaxWaitMs(int lane) {
+        return lanes[lane].maxWaitNanos.get() / 1e6;
+    }
+
+    public double getAverageRunMs(int lane) {
+        long count = lanes[lane].dispatchedCount.get();
+        return count > 0 ? lanes[lane].totalRunNanos.get() / 1e6 / count : 0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Lane lane : lanes) {
+            lane.executor.shutdownNow();
+        }
+    }
+}
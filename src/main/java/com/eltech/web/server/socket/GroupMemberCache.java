@@ -0,0 +1,97 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.user.controller.ChatController;
+import com.eltech.web.server.user.event.ChatChangeEvent;
+import com.eltech.web.server.user.service.GroupChatService;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Member uids of group chats, used to fan out room frames without querying the database on each frame.
+ * Entry is dropped, when a member joins or leaves the chat, and reloaded on next use.
+ * Sets, loaded while any chat was invalidated, are not kept, as they may miss that change.
+ */
+@Component
+public class GroupMemberCache {
+    private static final int MAX_CACHED_CHATS = 10000;
+
+    private static class Entry {
+        final Set<String> memberUids;
+        volatile long lastUseTime;
+
+        Entry(Set<String> memberUids) {
+            this.memberUids = memberUids;
+        }
+    }
+
+    private final GroupChatService groupChatService;
+    private final Map<Long, Entry> entriesByChatId = new ConcurrentHashMap<>();
+    // incremented on each invalidation
+    private final AtomicLong version = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    public GroupMemberCache(GroupChatService groupChatService) {
+        this.groupChatService = groupChatService;
+    }
+
+    /**
+     * @return unmodifiable set of member uids, empty if chat does not exist
+     */
+    public Set<String> getMemberUids(long chatId) {
+        Entry entry = entriesByChatId.get(chatId);
+        if (entry == null) {
+            long startVersion = version.get();
+            entry = new Entry(Collections.unmodifiableSet(new HashSet<>(groupChatService.getMemberUids(chatId))));
+            evictIfFull();
+            entriesByChatId.put(chatId, entry);
+            // invalidation could run between the query and the put, its remove could have missed the new entry
+            if (version.get() != startVersion) {
+                entriesByChatId.remove(chatId, entry);
+            }
+        }
+        entry.lastUseTime = System.nanoTime();
+        return entry.memberUids;
+    }
+
+    public void invalidate(long chatId) {
+        version.incrementAndGet();
+        entriesByChatId.remove(chatId);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChatChange(ChatChangeEvent event) {
+        if (event.getKind() == ChatChangeEvent.Kind.MEMBER_JOINED || event.getKind() == ChatChangeEvent.Kind.MEMBER_LEFT) {
+            ChatController.ChatId chatId = new ChatController.ChatId(event.getChatId());
+            if (chatId.isGroupChat()) {
+                invalidate(chatId.getId());
+            }
+        }
+    }
+
+    // least recently used half of entries is evicted at once, so sorting use times is amortized over many loads
+    private void evictIfFull() {
+        if (entriesByChatId.size() < MAX_CACHED_CHATS) {
+            return;
+        }
+        synchronized (evictionLock) {
+            if (entriesByChatId.size() < MAX_CACHED_CHATS) {
+                return;
+            }
+            long[] useTimes = entriesByChatId.values().stream().mapToLong(entry -> entry.lastUseTime).toArray();
+            if (useTimes.length == 0) {
+                return;
+            }
+            Arrays.sort(useTimes);
+            long evictedUseTime = useTimes[useTimes.length / 2];
+            entriesByChatId.values().removeIf(entry -> entry.lastUseTime <= evictedUseTime);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.eltech.web.server.socket;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cumulative histogram of durations over fixed buckets, recording does not allocate and takes no locks
+ */
+public class LatencyHistogram {
+    // upper bounds of buckets in microseconds, last bucket is unbounded
+    private static final long[] BUCKET_BOUNDS_MICROS = {
+            10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000, 100000, 250000, 1000000
+    };
+
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_BOUNDS_MICROS.length + 1);
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    public void record(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS_MICROS.length && micros > BUCKET_BOUNDS_MICROS[bucket]) {
+            bucket++;
+        }
+        bucketCounts.incrementAndGet(bucket);
+        totalNanos.addAndGet(nanos);
+    }
+
+    public int getBucketCount() {
+        return BUCKET_BOUNDS_MICROS.length + 1;
+    }
+
+    // upper bound of bucket in seconds, infinity for the last one
+    public double getBucketBoundSeconds(int bucket) {
+        return bucket < BUCKET_BOUNDS_MICROS.length ? BUCKET_BOUNDS_MICROS[bucket] / 1e6 : Double.POSITIVE_INFINITY;
+    }
+
+    // count of recorded durations, that do not exceed upper bound of the bucket
+    public long getCumulativeCount(int bucket) {
+        long count = 0;
+        for (int i = 0; i <= bucket; i++) {
+            count += bucketCounts.get(i);
+        }
+        return count;
+    }
+
+    public long getCount() {
+        return getCumulativeCount(BUCKET_BOUNDS_MICROS.length);
+    }
+
+    public double getTotalSeconds() {
+        return totalNanos.get() / 1e9;
+    }
+}
@@ -0,0 +1,266 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Bounded queue of frames, waiting to be sent to a single session.
+ * Senders only enqueue frames and never wait for the network, frames are written by the shared writer pool.
+ * Sessions are closed on a separate closer pool, a send to a stalled receiver must not delay the close.
+ * Droppable frames (ice candidates) are evicted first on overflow, if the queue still does not fit
+ * into its budget, or the receiver does not read fast enough, the session is closed.
+ */
+class OutboundQueue {
+    private static final int MAX_FRAMES_PER_DRAIN = 64;
+
+    private static class Frame {
+        final WebSocketMessage<?> message;
+        final boolean droppable;
+        final int size;
+        final long enqueueTime;
+
+        Frame(WebSocketMessage<?> message, boolean droppable, long enqueueTime) {
+            this.message = message;
+            this.droppable = droppable;
+            this.size = message.getPayloadLength();
+            this.enqueueTime = enqueueTime;
+        }
+    }
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final Executor closeExecutor;
+    private final SignalingProperties.Outbound settings;
+    private final SignalingMetrics metrics;
+
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    // urgent frames are sent ahead of all regular ones
+    private final ArrayDeque<Frame> urgentFrames = new ArrayDeque<>();
+    private int queuedBytes = 0;
+    private boolean draining = false;
+    private boolean closed = false;
+
+    // time, when currently running send started, 0 if nothing is being sent
+    private volatile long sendStartTime = 0;
+
+    // peak count of queued frames during the session
+    private volatile int maxDepth = 0;
+
+    OutboundQueue(WebSocketSession session, Executor executor, Executor closeExecutor,
+                  SignalingProperties.Outbound settings, SignalingMetrics metrics) {
+        this.session = session;
+        this.executor = executor;
+        this.closeExecutor = closeExecutor;
+        this.settings = settings;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Enqueues frame to be sent
+     * @param droppable if frame can be dropped, when queue overflows
+     * @param urgent if frame must be sent ahead of already queued regular frames, urgent frames are never dropped
+     * @return false, if frame was not enqueued
+     */
+    boolean offer(WebSocketMessage<?> message, boolean droppable, boolean urgent) {
+        long now = System.currentTimeMillis();
+        boolean schedule = false;
+        String overflowReason = null;
+
+        synchronized (this) {
+            if (closed) {
+                return false;
+            }
+
+            if (isReceiverStalled(now)) {
+                overflowReason = "send time limit exceeded";
+            } else {
+                Frame frame = new Frame(message, droppable && !urgent, now);
+                (urgent ? urgentFrames : frames).addLast(frame);
+                queuedBytes += frame.size;
+                if (isOverflown()) {
+                    if (settings.getOverflowPolicy() == SignalingProperties.OverflowPolicy.DROP_OLDEST) {
+                        dropOldestDroppable();
+                    }
+                    if (isOverflown()) {
+                        overflowReason = "outbound queue overflow";
+                    }
+                }
+            }
+
+            if (overflowReason != null) {
+                closed = true;
+                clear();
+            } else {
+                maxDepth = Math.max(maxDepth, size());
+                if (!draining) {
+                    draining = true;
+                    schedule = true;
+                }
+            }
+        }
+
+        if (overflowReason != null) {
+            closeSessionAsync(CloseStatus.SESSION_NOT_RELIABLE.withReason(overflowReason));
+            return false;
+        }
+        if (schedule) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                // writer pool is shut down, nothing will be sent anymore
+                synchronized (this) {
+                    draining = false;
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int size() {
+        return frames.size() + urgentFrames.size();
+    }
+
+    private void clear() {
+        metrics.onOutboundDropped(size());
+        frames.clear();
+        urgentFrames.clear();
+        queuedBytes = 0;
+    }
+
+    private boolean isOverflown() {
+        return size() > settings.getMaxFrames() || queuedBytes > settings.getMaxBytes();
+    }
+
+    private boolean isReceiverStalled(long now) {
+        long limit = settings.getSendTimeLimitMs();
+        long sendStart = sendStartTime;
+        if (sendStart != 0 && now - sendStart > limit) {
+            return true;
+        }
+        Frame oldest = frames.peekFirst();
+        Frame oldestUrgent = urgentFrames.peekFirst();
+        return (oldest != null && now - oldest.enqueueTime > limit) || (oldestUrgent != null && now - oldestUrgent.enqueueTime > limit);
+    }
+
+    private void dropOldestDroppable() {
+        Iterator<Frame> iterator = frames.iterator();
+        while (isOverflown() && iterator.hasNext()) {
+            Frame frame = iterator.next();
+            if (frame.droppable) {
+                iterator.remove();
+                queuedBytes -= frame.size;
+                metrics.onOutboundDropped(1);
+            }
+        }
+    }
+
+    private void drain() {
+        for (int i = 0; i < MAX_FRAMES_PER_DRAIN; i++) {
+            Frame frame;
+            synchronized (this) {
+                frame = urgentFrames.pollFirst();
+                if (frame == null) {
+                    frame = frames.pollFirst();
+                }
+                if (frame == null) {
+                    draining = false;
+                    return;
+                }
+                queuedBytes -= frame.size;
+            }
+
+            if (!session.isOpen()) {
+                close();
+                return;
+            }
+            sendStartTime = System.currentTimeMillis();
+            metrics.getQueueLatency().record((sendStartTime - frame.enqueueTime) * 1000000);
+            long sendStartNanos = System.nanoTime();
+            try {
+                session.sendMessage(frame.message);
+                metrics.getSendLatency().record(System.nanoTime() - sendStartNanos);
+                metrics.onOutboundSent();
+            } catch (IOException e) {
+                // send failed or exceeded the send time limit, the connection is not usable anymore
+                closeSession(CloseStatus.SESSION_NOT_RELIABLE.withReason("send failed"));
+                return;
+            } catch (IllegalStateException e) {
+                close();
+                return;
+            } finally {
+                sendStartTime = 0;
+            }
+        }
+
+        // let other sessions use this writer thread, continue later
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                draining = false;
+            }
+        }
+    }
+
+    /**
+     * Discards all queued frames and rejects any new ones
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            draining = false;
+            clear();
+        }
+    }
+
+    /**
+     * Discards queued frames and closes the session on a closer thread, closing may block on a dead connection
+     */
+    void closeSession(CloseStatus status) {
+        close();
+        closeSessionAsync(status);
+    }
+
+    /**
+     * Checked by the reaper, so a receiver, that stopped reading, is detected, even if no more frames are offered to it
+     * @return true, if a send or the oldest queued frame waits longer, than the send time limit
+     */
+    synchronized boolean isStalled() {
+        return !closed && isReceiverStalled(System.currentTimeMillis());
+    }
+
+    private void closeSessionAsync(CloseStatus status) {
+        Runnable closeTask = () -> {
+            try {
+                session.close(status);
+            } catch (IOException ignore) {
+                // session is closed anyway
+            }
+        };
+        try {
+            closeExecutor.execute(closeTask);
+        } catch (RejectedExecutionException e) {
+            closeTask.run();
+        }
+    }
+
+    synchronized int getDepth() {
+        return size();
+    }
+
+    synchronized int getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    int getMaxDepth() {
+        return maxDepth;
+    }
+}
@@ -0,0 +1,71 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared pool of writer threads, each outbound queue is drained by at most one of them at a time.
+ * Each blocking send is bounded by the send time limit, sessions are closed on a separate pool,
+ * so closes are not queued behind sends to stalled receivers.
+ */
+@Component
+public class OutboundWriter {
+    // tomcat bounds every blocking send of a session by this user property
+    private static final String BLOCKING_SEND_TIMEOUT = "org.apache.tomcat.websocket.BLOCKING_SEND_TIMEOUT";
+
+    private final SignalingProperties.Outbound settings;
+    private final SignalingMetrics metrics;
+    private final ExecutorService executor;
+    private final ThreadPoolExecutor closeExecutor;
+
+    public OutboundWriter(SignalingProperties properties, SignalingMetrics metrics) {
+        this.settings = properties.getOutbound();
+        this.metrics = metrics;
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, settings.getWriterThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "socket-writer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        AtomicInteger closerIndex = new AtomicInteger();
+        int closerThreads = Math.max(1, settings.getWriterThreads());
+        this.closeExecutor = new ThreadPoolExecutor(closerThreads, closerThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "socket-closer-" + closerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        closeExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    OutboundQueue createQueue(WebSocketSession session) {
+        limitSendTime(session);
+        return new OutboundQueue(session, executor, closeExecutor, settings, metrics);
+    }
+
+    // without the limit a send to a receiver, that stopped reading, holds a writer thread until tcp gives up
+    private void limitSendTime(WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession) {
+            javax.websocket.Session nativeSession = ((NativeWebSocketSession) session).getNativeSession(javax.websocket.Session.class);
+            if (nativeSession != null) {
+                nativeSession.getUserProperties().put(BLOCKING_SEND_TIMEOUT, settings.getSendTimeLimitMs());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        closeExecutor.shutdownNow();
+    }
+}
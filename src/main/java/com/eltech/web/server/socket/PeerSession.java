@@ -0,0 +1,161 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+class PeerSession {
+    public final WebSocketSession session;
+    private final OutboundQueue outboundQueue;
+    private final TokenBucket sdpBucket;
+    private final TokenBucket candidateBucket;
+    // client negotiated binary sub-protocol for sdp and candidate frames
+    private final boolean binaryProtocol;
+    private volatile String peerUid = null;
+    private volatile long lastActivityTime = System.currentTimeMillis();
+    private volatile TimerWheel.Timeout timeout = null;
+    // client can receive ice candidates, batched into a single frame
+    private volatile boolean acceptsCandidateBatches = false;
+    // pings, sent since the last pong
+    private final AtomicInteger missedHeartbeats = new AtomicInteger();
+    private volatile long lastPongTime = System.currentTimeMillis();
+
+    PeerSession(WebSocketSession session, OutboundQueue outboundQueue, TokenBucket sdpBucket, TokenBucket candidateBucket) {
+        this.session = session;
+        this.outboundQueue = outboundQueue;
+        this.sdpBucket = sdpBucket;
+        this.candidateBucket = candidateBucket;
+        this.binaryProtocol = BinarySignalingFrame.PROTOCOL.equals(session.getAcceptedProtocol());
+    }
+
+    public void setPeerUid(String peerUid) {
+        this.peerUid = peerUid;
+    }
+
+    public String getPeerUid() {
+        return peerUid;
+    }
+
+    public String getSessionId() {
+        return session.getId();
+    }
+
+    boolean isOpened() {
+        return session.isOpen();
+    }
+
+    boolean isExpired() { return !session.isOpen(); }
+
+    // receiver does not read frames, sent to it, within the send time limit
+    boolean isSendStalled() {
+        return outboundQueue.isStalled();
+    }
+
+    boolean isBinaryProtocol() {
+        return binaryProtocol;
+    }
+
+    boolean isInitialized() {
+        return peerUid != null;
+    }
+
+    boolean isAcceptingCandidateBatches() {
+        return acceptsCandidateBatches;
+    }
+
+    void setAcceptsCandidateBatches(boolean acceptsCandidateBatches) {
+        this.acceptsCandidateBatches = acceptsCandidateBatches;
+    }
+
+    // takes a token from the budget of sdp or candidate frames, sent by this session
+    boolean tryAcquireSend(boolean candidate) {
+        return (candidate ? candidateBucket : sdpBucket).tryTake();
+    }
+
+    void touch() {
+        lastActivityTime = System.currentTimeMillis();
+    }
+
+    long getLastActivityTime() {
+        return lastActivityTime;
+    }
+
+    /**
+     * Sends next heartbeat ping, unless the peer already missed given count of them
+     * @return false, if peer missed too many heartbeats and should be evicted
+     */
+    boolean ping(int maxMissedHeartbeats) {
+        if (missedHeartbeats.getAndIncrement() >= maxMissedHeartbeats) {
+            return false;
+        }
+        // ping goes ahead of queued frames, so a backed up queue is not mistaken for a dead peer
+        outboundQueue.offer(new PingMessage(), false, true);
+        return true;
+    }
+
+    void onPong() {
+        missedHeartbeats.set(0);
+        lastPongTime = System.currentTimeMillis();
+    }
+
+    long getLastPongTime() {
+        return lastPongTime;
+    }
+
+    // only one lifecycle timeout (handshake or idle) is pending for a session at a time
+    void setTimeout(TimerWheel.Timeout timeout) {
+        TimerWheel.Timeout previous = this.timeout;
+        this.timeout = timeout;
+        if (previous != null && previous != timeout) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Enqueues message to be sent by writer pool, never blocks on the network
+     * @param droppable if message may be dropped, when receiver is too slow
+     * @return false, if message was rejected
+     */
+    boolean send(WebSocketMessage<?> message, boolean droppable) {
+        return send(new RelayFrame(message), droppable);
+    }
+
+    /**
+     * Enqueues frame, that is fanned out to several sessions, in the protocol of this session
+     */
+    boolean send(RelayFrame frame, boolean droppable) {
+        return outboundQueue.offer(frame.forProtocol(binaryProtocol), droppable, false);
+    }
+
+    /**
+     * Enqueues frame ahead of all regular queued messages, it is never dropped
+     */
+    boolean sendUrgent(RelayFrame frame) {
+        return outboundQueue.offer(frame.forProtocol(binaryProtocol), false, true);
+    }
+
+    void close() {
+        setTimeout(null);
+        outboundQueue.close();
+    }
+
+    void closeSession(CloseStatus status) {
+        setTimeout(null);
+        outboundQueue.closeSession(status);
+    }
+
+    int getQueueDepth() {
+        return outboundQueue.getDepth();
+    }
+
+    int getQueuedBytes() {
+        return outboundQueue.getQueuedBytes();
+    }
+
+    int getMaxQueueDepth() {
+        return outboundQueue.getMaxDepth();
+    }
+}
@@ -0,0 +1,269 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+
+/**
+ * Keeps sdp and candidate frames, sent to a peer, that is not connected yet, for a few seconds
+ * and delivers them in order to every session, the peer initializes, while they are kept.
+ * Frames for a peer, that still has kept frames, are appended to them instead of being sent directly,
+ * so they never overtake kept ones, which are being delivered to a session, that has just initialized.
+ * Each peer has a bounded buffer, oldest frames are evicted, all buffers together are limited by payload size.
+ */
+@Component
+public class PendingFrameBuffer implements SessionListener {
+    private static class PendingFrame {
+        final WebSocketMessage<?> message;
+        final String targetSessionId;
+        final boolean droppable;
+        final long expireTime;
+        // accessed only under the lock of its target entry
+        boolean delivered = false;
+
+        PendingFrame(WebSocketMessage<?> message, String targetSessionId, boolean droppable, long expireTime) {
+            this.message = message;
+            this.targetSessionId = targetSessionId;
+            this.droppable = droppable;
+            this.expireTime = expireTime;
+        }
+    }
+
+    // entries are only modified under the per-key lock of the map
+    private static class PendingFrames {
+        final ArrayDeque<PendingFrame> frames = new ArrayDeque<>();
+        // sessions of the target, that were sent all kept frames
+        final Set<String> servedSessionIds = new HashSet<>();
+    }
+
+    private final SessionDirectory sessionDirectory;
+    private final SignalingProperties.PendingFrames settings;
+    private final TimerWheel timerWheel;
+
+    private final Map<String, PendingFrames> framesByTargetUid = new ConcurrentHashMap<>();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+
+    private final AtomicLong bufferedCount = new AtomicLong();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public PendingFrameBuffer(SessionDirectory sessionDirectory, SessionReaper sessionReaper, SignalingProperties properties) {
+        this.sessionDirectory = sessionDirectory;
+        this.settings = properties.getPendingFrames();
+        this.timerWheel = sessionReaper.getTimerWheel();
+        sessionDirectory.addListener(this);
+        schedulePurge();
+    }
+
+    /**
+     * Keeps frame for target uid, that has no sessions
+     * @return false, if frame was rejected, because buffer is full
+     */
+    boolean add(String targetUid, WebSocketMessage<?> message, boolean droppable) {
+        if (targetUid == null || !reserve(message)) {
+            return false;
+        }
+
+        PendingFrame frame = new PendingFrame(message, null, droppable, System.currentTimeMillis() + settings.getTtlMs());
+        framesByTargetUid.compute(targetUid, (key, entry) -> {
+            if (entry == null) {
+                entry = new PendingFrames();
+            }
+            append(entry, frame);
+            return entry;
+        });
+        bufferedCount.incrementAndGet();
+
+        // target could connect, while frame was being added
+        for (PeerSession target : sessionDirectory.getByUid(targetUid)) {
+            serve(targetUid, target.getSessionId());
+        }
+        return true;
+    }
+
+    /**
+     * Appends frame for a connected target after frames, kept for it, if there are any
+     * @param targetSessionId if not null, frame is delivered only to this session of the target
+     * @return false, if nothing is kept for the target, so frame has to be sent directly
+     */
+    boolean addIfPending(String targetUid, String targetSessionId, WebSocketMessage<?> message, boolean droppable) {
+        if (targetUid == null || !framesByTargetUid.containsKey(targetUid)) {
+            return false;
+        }
+        boolean[] appended = { false };
+        framesByTargetUid.computeIfPresent(targetUid, (key, entry) -> {
+            // frame is kept as well, so sessions, initialized later, get it in order with the others
+            if (reserve(message)) {
+                PendingFrame frame = new PendingFrame(message, targetSessionId, droppable, System.currentTimeMillis() + settings.getTtlMs());
+                // target was connected, so the frame does not count as buffered for the hit rate
+                frame.delivered = true;
+                append(entry, frame);
+            } else {
+                for (String sessionId : entry.servedSessionIds) {
+                    if (targetSessionId == null || targetSessionId.equals(sessionId)) {
+                        sessionDirectory.sendToSession(sessionId, message, droppable);
+                    }
+                }
+            }
+            appended[0] = true;
+            return entry;
+        });
+        return appended[0];
+    }
+
+    @Override
+    public void onSessionInitialized(String uid, String sessionId) {
+        serve(uid, sessionId);
+    }
+
+    @Override
+    public void onSessionRemoved(String uid, String sessionId) {
+        framesByTargetUid.computeIfPresent(uid, (key, entry) -> {
+            entry.servedSessionIds.remove(sessionId);
+            return entry;
+        });
+    }
+
+    // bytes of a frame are reserved before it is kept, so all buffers never exceed the limit
+    private boolean reserve(WebSocketMessage<?> message) {
+        int size = message.getPayloadLength();
+        if (bufferedBytes.addAndGet(size) > settings.getMaxBytes()) {
+            bufferedBytes.addAndGet(-size);
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    // called under the lock of the entry, frame is also sent to sessions, that already got the frames before it
+    private void append(PendingFrames entry, PendingFrame frame) {
+        entry.frames.addLast(frame);
+        while (entry.frames.size() > settings.getMaxFramesPerTarget()) {
+            release(entry.frames.pollFirst());
+            evictedCount.incrementAndGet();
+        }
+        for (String sessionId : entry.servedSessionIds) {
+            deliver(frame, sessionId);
+        }
+    }
+
+    // sends all kept frames to a session of the uid once, frames are sent under the entry lock, so nothing overtakes them
+    private void serve(String uid, String sessionId) {
+        framesByTargetUid.computeIfPresent(uid, (key, entry) -> {
+            if (sessionDirectory.getBySessionId(sessionId) == null || !entry.servedSessionIds.add(sessionId)) {
+                return entry;
+            }
+            long now = System.currentTimeMillis();
+            for (PendingFrame frame : entry.frames) {
+                if (frame.expireTime >= now) {
+                    deliver(frame, sessionId);
+                }
+            }
+            return entry;
+        });
+    }
+
+    private void deliver(PendingFrame frame, String sessionId) {
+        if (frame.targetSessionId != null && !frame.targetSessionId.equals(sessionId)) {
+            return;
+        }
+        if (sessionDirectory.sendToSession(sessionId, frame.message, frame.droppable) && !frame.delivered) {
+            frame.delivered = true;
+            deliveredCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes all frames, kept for given uid, and passes not expired ones to the consumer in order
+     * @param consumer returns true, if frame was delivered
+     */
+    void drain(String uid, BiPredicate<WebSocketMessage<?>, Boolean> consumer) {
+        PendingFrames entry = framesByTargetUid.remove(uid);
+        if (entry == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        // frames are taken out of the map, so no one else modifies the queue
+        for (PendingFrame frame : entry.frames) {
+            release(frame);
+            if (frame.expireTime < now) {
+                if (!frame.delivered) {
+                    expiredCount.incrementAndGet();
+                }
+            } else if (consumer.test(frame.message, frame.droppable) && !frame.delivered) {
+                deliveredCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        for (String uid : framesByTargetUid.keySet()) {
+            framesByTargetUid.computeIfPresent(uid, (key, entry) -> {
+                while (!entry.frames.isEmpty() && entry.frames.peekFirst().expireTime < now) {
+                    PendingFrame frame = entry.frames.pollFirst();
+                    release(frame);
+                    if (!frame.delivered) {
+                        expiredCount.incrementAndGet();
+                    }
+                }
+                return entry.frames.isEmpty() ? null : entry;
+            });
+        }
+    }
+
+    private void schedulePurge() {
+        timerWheel.schedule(() -> {
+            purgeExpired();
+            schedulePurge();
+        }, Math.max(100, settings.getTtlMs() / 2));
+    }
+
+    private void release(PendingFrame frame) {
+        bufferedBytes.addAndGet(-frame.message.getPayloadLength());
+    }
+
+    public int getTargetCount() {
+        return framesByTargetUid.size();
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    public long getBufferedCount() {
+        return bufferedCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    // share of buffered frames, that were delivered to their target
+    public double getHitRate() {
+        long buffered = bufferedCount.get();
+        return buffered > 0 ? (double) deliveredCount.get() / buffered : 0;
+    }
+}
@@ -0,0 +1,152 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.user.service.UserService;
+import com.google.gson.Gson;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes online/offline changes of users to their contacts over signaling socket.
+ * Changes are only marked on the directory thread, once per debounce interval current state of each changed uid
+ * is compared to the last published one, so a uid, that went offline and back, produces nothing,
+ * and every recipient gets a single frame with all changes of the interval.
+ */
+@Component
+public class PresenceService implements SessionListener {
+    public static final String EVENT_PRESENCE = "presence";
+
+    private static class PresencePayload {
+        final List<String> online = new ArrayList<>();
+        final List<String> offline = new ArrayList<>();
+        // true, if online contains all online contacts of recipient
+        boolean snapshot = false;
+    }
+
+    private static class PresenceFrame {
+        final String type = EVENT_PRESENCE;
+        final PresencePayload payload;
+
+        PresenceFrame(PresencePayload payload) {
+            this.payload = payload;
+        }
+    }
+
+    private final SessionDirectory sessionDirectory;
+    private final UserService userService;
+    private final EventLog eventLog;
+    private final ScheduledExecutorService scheduler;
+    private final Gson gson = new Gson();
+
+    private final Set<String> changedUids = ConcurrentHashMap.newKeySet();
+    // session id -> uid of sessions, that need current presence of their contacts
+    private final Map<String, String> pendingSnapshots = new ConcurrentHashMap<>();
+
+    // accessed only from scheduler thread
+    private final Set<String> publishedOnlineUids = new HashSet<>();
+
+    public PresenceService(SessionDirectory sessionDirectory, UserService userService, SignalingProperties properties, EventLog eventLog) {
+        this.sessionDirectory = sessionDirectory;
+        this.userService = userService;
+        this.eventLog = eventLog;
+
+        long debounceMs = properties.getPresence().getDebounceMs();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "socket-presence");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, debounceMs, debounceMs, TimeUnit.MILLISECONDS);
+
+        sessionDirectory.addListener(this);
+    }
+
+    public boolean isOnline(String uid) {
+        return sessionDirectory.isOnline(uid);
+    }
+
+    @Override
+    public void onUidOnline(String uid) {
+        changedUids.add(uid);
+    }
+
+    @Override
+    public void onUidOffline(String uid) {
+        changedUids.add(uid);
+    }
+
+    @Override
+    public void onSessionInitialized(String uid, String sessionId) {
+        pendingSnapshots.put(sessionId, uid);
+    }
+
+    private void flush() {
+        try {
+            publishChanges();
+            publishSnapshots();
+        } catch (RuntimeException e) {
+            // flush must not stop the scheduler
+            eventLog.error("socket.presence_flush_failed", "failed to push presence changes", e);
+        }
+    }
+
+    private void publishChanges() {
+        Map<String, PresencePayload> payloadByRecipient = new HashMap<>();
+        for (Iterator<String> iterator = changedUids.iterator(); iterator.hasNext(); ) {
+            String uid = iterator.next();
+            iterator.remove();
+
+            boolean online = sessionDirectory.isOnline(uid);
+            if (online == publishedOnlineUids.contains(uid)) {
+                continue;
+            }
+            if (online) {
+                publishedOnlineUids.add(uid);
+            } else {
+                publishedOnlineUids.remove(uid);
+            }
+
+            for (String recipient : userService.getContactUids(uid)) {
+                if (sessionDirectory.isOnline(recipient)) {
+                    PresencePayload payload = payloadByRecipient.computeIfAbsent(recipient, key -> new PresencePayload());
+                    (online ? payload.online : payload.offline).add(uid);
+                }
+            }
+        }
+
+        payloadByRecipient.forEach((recipient, payload) ->
+                sessionDirectory.sendToUid(recipient, toMessage(payload), false));
+    }
+
+    private void publishSnapshots() {
+        for (Iterator<Map.Entry<String, String>> iterator = pendingSnapshots.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, String> entry = iterator.next();
+            iterator.remove();
+
+            PresencePayload payload = new PresencePayload();
+            payload.snapshot = true;
+            for (String contact : userService.getContactUids(entry.getValue())) {
+                if (sessionDirectory.isOnline(contact)) {
+                    payload.online.add(contact);
+                }
+            }
+            sessionDirectory.sendToSession(entry.getKey(), toMessage(payload), false);
+        }
+    }
+
+    private TextMessage toMessage(PresencePayload payload) {
+        return new TextMessage(gson.toJson(new PresenceFrame(payload)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+}
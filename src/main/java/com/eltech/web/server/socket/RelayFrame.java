@@ -0,0 +1,48 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * Frame, that is sent to several sessions, it is converted to the other protocol at most once, for the first session, that needs it.
+ * Used by a single thread, while the frame is fanned out.
+ * Writing a binary message moves position of its payload buffer, so each session gets its own view of the buffer
+ * and the kept messages are never written, they stay untouched for conversion and further sends.
+ */
+class RelayFrame {
+    private final WebSocketMessage<?> message;
+    private final boolean binary;
+    private WebSocketMessage<?> converted = null;
+
+    RelayFrame(WebSocketMessage<?> message) {
+        this.message = message;
+        this.binary = message instanceof BinaryMessage;
+    }
+
+    // frames, that have no form in the other protocol, are sent as is
+    WebSocketMessage<?> forProtocol(boolean binaryProtocol) {
+        return ownCopy(binaryProtocol == binary ? message : converted());
+    }
+
+    private WebSocketMessage<?> converted() {
+        if (converted == null) {
+            WebSocketMessage<?> result = null;
+            if (binary) {
+                result = BinarySignalingFrame.toText((BinaryMessage) message);
+            } else if (message instanceof TextMessage) {
+                result = BinarySignalingFrame.toBinary((TextMessage) message);
+            }
+            converted = result != null ? result : message;
+        }
+        return converted;
+    }
+
+    private static WebSocketMessage<?> ownCopy(WebSocketMessage<?> message) {
+        if (message instanceof BinaryMessage) {
+            BinaryMessage binaryMessage = (BinaryMessage) message;
+            return new BinaryMessage(binaryMessage.getPayload().duplicate(), binaryMessage.isLast());
+        }
+        return message;
+    }
+}
@@ -0,0 +1,234 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+/**
+ * Registry of all signaling socket sessions.
+ * Lookups never take a lock, sessions of one uid are kept in an immutable array, which is replaced
+ * on each change under the per-key lock of the concurrent map, so writers of different uids do not block each other.
+ */
+@Component
+public class SessionDirectory {
+    private static final PeerSession[] NO_SESSIONS = new PeerSession[0];
+
+    private final Map<String, PeerSession> uninitializedSessions = new ConcurrentHashMap<>();
+    private final Map<String, PeerSession> peerSessionBySessionId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, PeerSession[]> peerSessionsByUid = new ConcurrentHashMap<>();
+
+    private final List<SessionListener> listeners = new CopyOnWriteArrayList<>();
+
+    public void addListener(SessionListener listener) {
+        listeners.add(listener);
+    }
+
+    PeerSession addUninitialized(PeerSession peer) {
+        uninitializedSessions.put(peer.getSessionId(), peer);
+        return peer;
+    }
+
+    /**
+     * Moves uninitialized session to initialized ones under given uid.
+     * @param maxSessionsPerUid session is not initialized, if uid already has this many sessions, 0 means no limit
+     * @return session, that is not initialized, if limit is reached, or null, if session is unknown or was already initialized
+     */
+    PeerSession initialize(String sessionId, String uid, int maxSessionsPerUid) {
+        if (uid == null) {
+            return null;
+        }
+        PeerSession peer = uninitializedSessions.get(sessionId);
+        if (peer == null) {
+            return null;
+        }
+
+        boolean[] added = { false };
+        boolean[] wentOnline = { false };
+        peerSessionsByUid.compute(uid, (key, sessions) -> {
+            if (sessions != null && maxSessionsPerUid > 0 && sessions.length >= maxSessionsPerUid) {
+                return sessions;
+            }
+            added[0] = true;
+            wentOnline[0] = sessions == null;
+            return append(sessions, peer);
+        });
+        if (!added[0]) {
+            return peer;
+        }
+
+        peer.setPeerUid(uid);
+        peerSessionBySessionId.put(sessionId, peer);
+        if (!uninitializedSessions.remove(sessionId, peer)) {
+            // session was closed meanwhile
+            remove(sessionId);
+            return null;
+        }
+
+        for (SessionListener listener : listeners) {
+            if (wentOnline[0]) {
+                listener.onUidOnline(uid);
+            }
+            listener.onSessionInitialized(uid, sessionId);
+        }
+        return peer;
+    }
+
+    /**
+     * Enqueues message to all sessions of given uid
+     * @return count of sessions, message was enqueued to
+     */
+    public int sendToUid(String uid, WebSocketMessage<?> message, boolean droppable) {
+        int count = 0;
+        RelayFrame frame = new RelayFrame(message);
+        for (PeerSession peer : getByUid(uid)) {
+            if (peer.send(frame, droppable)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public boolean sendToSession(String sessionId, WebSocketMessage<?> message, boolean droppable) {
+        PeerSession peer = getBySessionId(sessionId);
+        return peer != null && peer.send(message, droppable);
+    }
+
+    PeerSession getBySessionId(String sessionId) {
+        return peerSessionBySessionId.get(sessionId);
+    }
+
+    /**
+     * @return sessions of given uid, returned array must not be modified
+     */
+    PeerSession[] getByUid(String uid) {
+        if (uid == null) {
+            return NO_SESSIONS;
+        }
+        PeerSession[] sessions = peerSessionsByUid.get(uid);
+        return sessions != null ? sessions : NO_SESSIONS;
+    }
+
+    /**
+     * @return live view of uids, that have at least one initialized session
+     */
+    public Set<String> getOnlineUids() {
+        return Collections.unmodifiableSet(peerSessionsByUid.keySet());
+    }
+
+    public boolean isOnline(String uid) {
+        return getByUid(uid).length > 0;
+    }
+
+    /**
+     * Removes session from all maps and discards its outbound queue
+     * @return removed session or null, if it was not registered
+     */
+    PeerSession remove(String sessionId) {
+        PeerSession peer = uninitializedSessions.remove(sessionId);
+        if (peer == null) {
+            peer = peerSessionBySessionId.remove(sessionId);
+            if (peer != null) {
+                PeerSession removed = peer;
+                boolean[] wentOffline = { false };
+                peerSessionsByUid.computeIfPresent(peer.getPeerUid(), (key, sessions) -> {
+                    PeerSession[] result = without(sessions, removed::equals);
+                    wentOffline[0] = result == null;
+                    return result;
+                });
+
+                for (SessionListener listener : listeners) {
+                    listener.onSessionRemoved(peer.getPeerUid(), sessionId);
+                    if (wentOffline[0]) {
+                        listener.onUidOffline(peer.getPeerUid());
+                    }
+                }
+            }
+        }
+        if (peer != null) {
+            peer.close();
+        }
+        return peer;
+    }
+
+    /**
+     * Removes all sessions, matching given predicate
+     * @return count of removed sessions
+     */
+    int removeIf(Predicate<PeerSession> predicate) {
+        int removedCount = 0;
+        for (PeerSession peer : uninitializedSessions.values()) {
+            if (predicate.test(peer) && uninitializedSessions.remove(peer.getSessionId(), peer)) {
+                peer.close();
+                removedCount++;
+            }
+        }
+        for (PeerSession peer : peerSessionBySessionId.values()) {
+            if (predicate.test(peer) && remove(peer.getSessionId()) != null) {
+                removedCount++;
+            }
+        }
+        return removedCount;
+    }
+
+    Collection<PeerSession> getInitializedSessions() {
+        return Collections.unmodifiableCollection(peerSessionBySessionId.values());
+    }
+
+    public int getUninitializedCount() {
+        return uninitializedSessions.size();
+    }
+
+    public int getInitializedCount() {
+        return peerSessionBySessionId.size();
+    }
+
+    public int getUidCount() {
+        return peerSessionsByUid.size();
+    }
+
+    public int getSessionCount() {
+        return getUninitializedCount() + getInitializedCount();
+    }
+
+    private static PeerSession[] append(PeerSession[] sessions, PeerSession peer) {
+        if (sessions == null) {
+            return new PeerSession[] { peer };
+        }
+        PeerSession[] result = Arrays.copyOf(sessions, sessions.length + 1);
+        result[sessions.length] = peer;
+        return result;
+    }
+
+    // returns null if no sessions are left, so the map entry is removed
+    private static PeerSession[] without(PeerSession[] sessions, Predicate<PeerSession> predicate) {
+        int count = 0;
+        for (PeerSession session : sessions) {
+            if (!predicate.test(session)) {
+                count++;
+            }
+        }
+        if (count == sessions.length) {
+            return sessions;
+        }
+        if (count == 0) {
+            return null;
+        }
+        PeerSession[] result = new PeerSession[count];
+        int index = 0;
+        for (PeerSession session : sessions) {
+            if (!predicate.test(session)) {
+                result[index++] = session;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package com.eltech.web.server.socket;
+
+/**
+ * Receives session directory changes, methods are called on the thread, that changed the directory, so they must not block.
+ */
+public interface SessionListener {
+    // first session of uid was initialized
+    default void onUidOnline(String uid) {
+
+    }
+
+    // last session of uid was removed
+    default void onUidOffline(String uid) {
+
+    }
+
+    // any session was initialized under given uid
+    default void onSessionInitialized(String uid, String sessionId) {
+
+    }
+
+    // initialized session of given uid was removed
+    default void onSessionRemoved(String uid, String sessionId) {
+
+    }
+}
@@ -0,0 +1,133 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closes and releases sessions, that did not complete handshake, stayed idle for too long or stopped answering heartbeat pings.
+ * All timeouts are served by a single timer wheel, sessions closed normally are removed by close events,
+ * periodic sweep catches sessions, whose close event was lost, and sessions, whose receiver stopped reading frames.
+ * Heartbeat is a single periodic round over all initialized sessions, not a task per session.
+ */
+@Component
+public class SessionReaper {
+    private final SessionDirectory sessionDirectory;
+    private final SignalingProperties.Lifecycle settings;
+    private final SignalingMetrics metrics;
+    private final EventLog eventLog;
+    private final TimerWheel timerWheel;
+
+    private final AtomicLong pingCount = new AtomicLong();
+    private final AtomicLong heartbeatEvictionCount = new AtomicLong();
+    private final AtomicLong stalledEvictionCount = new AtomicLong();
+
+    public SessionReaper(SessionDirectory sessionDirectory, SignalingProperties properties, SignalingMetrics metrics, EventLog eventLog) {
+        this.sessionDirectory = sessionDirectory;
+        this.settings = properties.getLifecycle();
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+        this.timerWheel = new TimerWheel("socket-reaper", settings.getTickMs(), settings.getWheelSize(), eventLog);
+        scheduleSweep();
+        if (settings.getHeartbeatIntervalMs() > 0) {
+            scheduleHeartbeat();
+        }
+    }
+
+    TimerWheel getTimerWheel() {
+        return timerWheel;
+    }
+
+    void onConnected(PeerSession peer) {
+        peer.setTimeout(timerWheel.schedule(() -> onHandshakeTimeout(peer), settings.getHandshakeTimeoutMs()));
+    }
+
+    void onInitialized(PeerSession peer) {
+        peer.touch();
+        if (settings.getIdleTimeoutMs() > 0) {
+            peer.setTimeout(timerWheel.schedule(() -> onIdleTimeout(peer), settings.getIdleTimeoutMs()));
+        } else {
+            peer.setTimeout(null);
+        }
+    }
+
+    private void onHandshakeTimeout(PeerSession peer) {
+        if (!peer.isInitialized()) {
+            release(peer, CloseStatus.POLICY_VIOLATION.withReason("peer_init timeout"));
+        }
+    }
+
+    private void onIdleTimeout(PeerSession peer) {
+        long idleTime = System.currentTimeMillis() - peer.getLastActivityTime();
+        if (idleTime >= settings.getIdleTimeoutMs()) {
+            release(peer, CloseStatus.SESSION_NOT_RELIABLE.withReason("idle timeout"));
+        } else {
+            // there was activity since timeout was scheduled, wait for the rest of idle interval
+            peer.setTimeout(timerWheel.schedule(() -> onIdleTimeout(peer), settings.getIdleTimeoutMs() - idleTime));
+        }
+    }
+
+    private void release(PeerSession peer, CloseStatus status) {
+        sessionDirectory.remove(peer.getSessionId());
+        peer.closeSession(status);
+    }
+
+    private void scheduleSweep() {
+        timerWheel.schedule(() -> {
+            long startTime = System.nanoTime();
+            int releasedCount = sessionDirectory.removeIf(PeerSession::isExpired);
+            for (PeerSession peer : sessionDirectory.getInitializedSessions()) {
+                // a stalled queue, that no frame is offered to, would never notice the send time limit by itself
+                if (peer.isSendStalled()) {
+                    stalledEvictionCount.incrementAndGet();
+                    release(peer, CloseStatus.SESSION_NOT_RELIABLE.withReason("send time limit exceeded"));
+                    releasedCount++;
+                }
+            }
+            if (releasedCount > 0) {
+                eventLog.info("socket.expired_sessions_released", "released expired socket sessions",
+                        "released", releasedCount, "remaining", sessionDirectory.getSessionCount());
+            }
+            metrics.getReaperRunTime().record(System.nanoTime() - startTime);
+            scheduleSweep();
+        }, settings.getSweepIntervalMs());
+    }
+
+    private void scheduleHeartbeat() {
+        timerWheel.schedule(() -> {
+            long startTime = System.nanoTime();
+            int maxMissedHeartbeats = settings.getMaxMissedHeartbeats();
+            for (PeerSession peer : sessionDirectory.getInitializedSessions()) {
+                if (peer.ping(maxMissedHeartbeats)) {
+                    pingCount.incrementAndGet();
+                } else {
+                    // tcp connection is most likely half-open, container would not notice it for a long time
+                    heartbeatEvictionCount.incrementAndGet();
+                    release(peer, CloseStatus.SESSION_NOT_RELIABLE.withReason("heartbeat timeout"));
+                }
+            }
+            metrics.getReaperRunTime().record(System.nanoTime() - startTime);
+            scheduleHeartbeat();
+        }, settings.getHeartbeatIntervalMs());
+    }
+
+    public long getPingCount() {
+        return pingCount.get();
+    }
+
+    public long getHeartbeatEvictionCount() {
+        return heartbeatEvictionCount.get();
+    }
+
+    public long getStalledEvictionCount() {
+        return stalledEvictionCount.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timerWheel.stop();
+    }
+}
@@ -0,0 +1,106 @@
+package com.eltech.web.server.socket;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Routing header of a signaling frame: {"type": ..., "payload": {"uid" | "senderUid", "targetUid", "targetSessionId" | "chatId", ...}},
+ * for sdp frames also the description type from "sdp": {"type": "offer" | "answer", ...}.
+ * It is read in a single streaming pass, all other values (sdp, candidate bodies) are skipped without
+ * being materialized, the frame itself is forwarded as is.
+ */
+class SignalingFrame {
+    String type;
+    // peer_init
+    String uid;
+    boolean batchCandidates;
+    // sdp and candidate
+    String senderUid;
+    String targetUid;
+    // optional, addresses single device session of target uid
+    String targetSessionId;
+    // sdp starts a new call
+    boolean offer;
+    // room
+    String chatId;
+
+    /**
+     * @throws IOException if frame is not a json object, or malformed
+     */
+    static SignalingFrame parse(String text) throws IOException {
+        SignalingFrame frame = new SignalingFrame();
+        try (JsonReader reader = new JsonReader(new StringReader(text))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("type".equals(name)) {
+                    frame.type = nextStringOrNull(reader);
+                } else if ("payload".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    frame.readPayload(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException(e);
+        }
+        return frame;
+    }
+
+    private void readPayload(JsonReader reader) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "uid" -> uid = nextStringOrNull(reader);
+                case "batchCandidates" -> batchCandidates = nextBoolean(reader);
+                case "senderUid" -> senderUid = nextStringOrNull(reader);
+                case "targetUid" -> targetUid = nextStringOrNull(reader);
+                case "targetSessionId" -> targetSessionId = nextStringOrNull(reader);
+                case "chatId" -> chatId = nextStringOrNull(reader);
+                case "sdp" -> offer = isOffer(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // sdp body is skipped, only its type is compared
+    static boolean isOffer(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return false;
+        }
+        boolean offer = false;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("type".equals(reader.nextName())) {
+                offer = "offer".equals(nextStringOrNull(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return offer;
+    }
+
+    private static boolean nextBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.BOOLEAN) {
+            return reader.nextBoolean();
+        }
+        reader.skipValue();
+        return false;
+    }
+
+    private static String nextStringOrNull(JsonReader reader) throws IOException {
+        JsonToken token = reader.peek();
+        if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+            return reader.nextString();
+        }
+        reader.skipValue();
+        return null;
+    }
+}
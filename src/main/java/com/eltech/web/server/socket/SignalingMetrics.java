@@ -0,0 +1,127 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms of the signaling hot path. Recording only bumps preallocated counters,
+ * gauges of other components are read, when metrics are scraped.
+ */
+@Component
+public class SignalingMetrics {
+    public enum Event {
+        PEER_INIT, SDP, CANDIDATE, ROOM, UNKNOWN
+    }
+
+    public enum Drop {
+        // frame could not be parsed
+        MALFORMED,
+        // sender uid of the frame is not the one, bound to the session, or session is not initialized
+        INVALID_SENDER,
+        // target has no sessions on this node and frame could be neither forwarded nor kept for it
+        UNKNOWN_TARGET,
+        // room frame from a user, that is not a member of the group chat
+        NOT_MEMBER
+    }
+
+    // how a frame for a target without local sessions left the handler
+    public enum AbsentTargetRoute {
+        // sent to the cluster node, owning the target
+        FORWARDED,
+        // kept in pending buffer, until the target connects
+        BUFFERED
+    }
+
+    private final LongAdder[] eventCounts = newAdders(Event.values().length);
+    private final LongAdder[] dropCounts = newAdders(Drop.values().length);
+    private final LongAdder[] absentTargetCounts = newAdders(AbsentTargetRoute.values().length);
+    // frames written to sessions and frames dropped from outbound queues on overflow or close, of all sessions
+    private final LongAdder outboundSentCount = new LongAdder();
+    private final LongAdder outboundDroppedCount = new LongAdder();
+
+    // time of handling single inbound frame, from parsing till all target queues got it
+    private final LatencyHistogram handlerLatency = new LatencyHistogram();
+    // time, frame waited in outbound queue of a session
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    // time of writing single frame to a session
+    private final LatencyHistogram sendLatency = new LatencyHistogram();
+    // time of single sweep or heartbeat round of the reaper
+    private final LatencyHistogram reaperRunTime = new LatencyHistogram();
+
+    void onEvent(String type) {
+        Event event;
+        if (type == null) {
+            event = Event.UNKNOWN;
+        } else {
+            event = switch (type) {
+                case SocketHandler.EVENT_PEER_INIT -> Event.PEER_INIT;
+                case SocketHandler.EVENT_SDP -> Event.SDP;
+                case SocketHandler.EVENT_CANDIDATE -> Event.CANDIDATE;
+                case SocketHandler.EVENT_ROOM -> Event.ROOM;
+                default -> Event.UNKNOWN;
+            };
+        }
+        eventCounts[event.ordinal()].increment();
+    }
+
+    void onDrop(Drop drop) {
+        dropCounts[drop.ordinal()].increment();
+    }
+
+    void onAbsentTarget(AbsentTargetRoute route) {
+        absentTargetCounts[route.ordinal()].increment();
+    }
+
+    void onOutboundSent() {
+        outboundSentCount.increment();
+    }
+
+    void onOutboundDropped(int count) {
+        outboundDroppedCount.add(count);
+    }
+
+    public long getOutboundSentCount() {
+        return outboundSentCount.sum();
+    }
+
+    public long getOutboundDroppedCount() {
+        return outboundDroppedCount.sum();
+    }
+
+    public long getEventCount(Event event) {
+        return eventCounts[event.ordinal()].sum();
+    }
+
+    public long getDropCount(Drop drop) {
+        return dropCounts[drop.ordinal()].sum();
+    }
+
+    public long getAbsentTargetCount(AbsentTargetRoute route) {
+        return absentTargetCounts[route.ordinal()].sum();
+    }
+
+    public LatencyHistogram getHandlerLatency() {
+        return handlerLatency;
+    }
+
+    public LatencyHistogram getQueueLatency() {
+        return queueLatency;
+    }
+
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    public LatencyHistogram getReaperRunTime() {
+        return reaperRunTime;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+}
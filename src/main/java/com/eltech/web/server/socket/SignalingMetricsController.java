@@ -0,0 +1,165 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.metrics.MetricsSource;
+import com.eltech.web.server.metrics.PrometheusWriter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Signaling metrics in prometheus text exposition format. Counters are only read here,
+ * gauges, that require iterating sessions, are computed per scrape.
+ * Metrics of other components follow, each MetricsSource bean writes its own.
+ */
+@RestController
+public class SignalingMetricsController {
+    private final SignalingMetrics metrics;
+    private final SessionDirectory sessionDirectory;
+    private final DispatchLanes dispatchLanes;
+    private final SessionReaper sessionReaper;
+    private final PendingFrameBuffer pendingFrameBuffer;
+    private final ClusterRouter clusterRouter;
+    private final AdmissionControl admissionControl;
+    private final CallPinRegistry callPinRegistry;
+    private final List<MetricsSource> sources;
+
+    public SignalingMetricsController(SignalingMetrics metrics, SessionDirectory sessionDirectory, DispatchLanes dispatchLanes,
+                                      SessionReaper sessionReaper, PendingFrameBuffer pendingFrameBuffer, ClusterRouter clusterRouter,
+                                      AdmissionControl admissionControl, CallPinRegistry callPinRegistry,
+                                      ObjectProvider<MetricsSource> sourceProvider) {
+        this.metrics = metrics;
+        this.sessionDirectory = sessionDirectory;
+        this.dispatchLanes = dispatchLanes;
+        this.sessionReaper = sessionReaper;
+        this.pendingFrameBuffer = pendingFrameBuffer;
+        this.clusterRouter = clusterRouter;
+        this.admissionControl = admissionControl;
+        this.callPinRegistry = callPinRegistry;
+        this.sources = sourceProvider.orderedStream().collect(Collectors.toList());
+    }
+
+    @GetMapping(path = "/metrics", produces = PrometheusWriter.CONTENT_TYPE)
+    public String getMetrics() {
+        PrometheusWriter writer = new PrometheusWriter(8192);
+
+        writer.type("signaling_events_total", "counter");
+        for (SignalingMetrics.Event event : SignalingMetrics.Event.values()) {
+            writer.sample("signaling_events_total", "type", event.name().toLowerCase(Locale.ROOT), metrics.getEventCount(event));
+        }
+        writer.type("signaling_drops_total", "counter");
+        for (SignalingMetrics.Drop drop : SignalingMetrics.Drop.values()) {
+            writer.sample("signaling_drops_total", "reason", drop.name().toLowerCase(Locale.ROOT), metrics.getDropCount(drop));
+        }
+        writer.type("signaling_absent_target_frames_total", "counter");
+        for (SignalingMetrics.AbsentTargetRoute route : SignalingMetrics.AbsentTargetRoute.values()) {
+            writer.sample("signaling_absent_target_frames_total", "route", route.name().toLowerCase(Locale.ROOT), metrics.getAbsentTargetCount(route));
+        }
+
+        histogram(writer, "signaling_handler_latency_seconds", metrics.getHandlerLatency());
+        histogram(writer, "signaling_outbound_queue_latency_seconds", metrics.getQueueLatency());
+        histogram(writer, "signaling_send_latency_seconds", metrics.getSendLatency());
+        histogram(writer, "signaling_reaper_run_seconds", metrics.getReaperRunTime());
+
+        writer.type("signaling_sessions", "gauge");
+        writer.sample("signaling_sessions", "state", "uninitialized", sessionDirectory.getUninitializedCount());
+        writer.sample("signaling_sessions", "state", "initialized", sessionDirectory.getInitializedCount());
+        writer.gauge("signaling_online_uids", sessionDirectory.getUidCount());
+
+        long queuedFrames = 0;
+        long queuedBytes = 0;
+        int maxQueueDepth = 0;
+        int peakQueueDepth = 0;
+        for (PeerSession peer : sessionDirectory.getInitializedSessions()) {
+            int depth = peer.getQueueDepth();
+            queuedFrames += depth;
+            queuedBytes += peer.getQueuedBytes();
+            maxQueueDepth = Math.max(maxQueueDepth, depth);
+            peakQueueDepth = Math.max(peakQueueDepth, peer.getMaxQueueDepth());
+        }
+        writer.gauge("signaling_outbound_queued_frames", queuedFrames);
+        writer.gauge("signaling_outbound_queued_bytes", queuedBytes);
+        // deepest queue of a single session now and deepest one any connected session has reached
+        writer.gauge("signaling_outbound_max_queue_depth", maxQueueDepth);
+        writer.gauge("signaling_outbound_peak_queue_depth", peakQueueDepth);
+        writer.counter("signaling_outbound_sent_total", metrics.getOutboundSentCount());
+        writer.counter("signaling_outbound_dropped_total", metrics.getOutboundDroppedCount());
+
+        writer.type("signaling_dispatch_queue_depth", "gauge");
+        for (int lane = 0; lane < dispatchLanes.getLaneCount(); lane++) {
+            writer.sample("signaling_dispatch_queue_depth", "lane", String.valueOf(lane), dispatchLanes.getQueueDepth(lane));
+        }
+        writer.type("signaling_dispatch_frames_total", "counter");
+        for (int lane = 0; lane < dispatchLanes.getLaneCount(); lane++) {
+            writer.sample("signaling_dispatch_frames_total", "lane", String.valueOf(lane), dispatchLanes.getDispatchedCount(lane));
+        }
+        writer.type("signaling_dispatch_rejected_total", "counter");
+        for (int lane = 0; lane < dispatchLanes.getLaneCount(); lane++) {
+            writer.sample("signaling_dispatch_rejected_total", "lane", String.valueOf(lane), dispatchLanes.getRejectedCount(lane));
+        }
+        writer.type("signaling_dispatch_max_wait_seconds", "gauge");
+        for (int lane = 0; lane < dispatchLanes.getLaneCount(); lane++) {
+            writer.sample("signaling_dispatch_max_wait_seconds", "lane", String.valueOf(lane), dispatchLanes.getMaxWaitMs(lane) / 1000);
+        }
+        writer.type("signaling_dispatch_avg_wait_seconds", "gauge");
+        for (int lane = 0; lane < dispatchLanes.getLaneCount(); lane++) {
+            writer.sample("signaling_dispatch_avg_wait_seconds", "lane", String.valueOf(lane), dispatchLanes.getAverageWaitMs(lane) / 1000);
+        }
+        writer.type("signaling_dispatch_avg_run_seconds", "gauge");
+        for (int lane = 0; lane < dispatchLanes.getLaneCount(); lane++) {
+            writer.sample("signaling_dispatch_avg_run_seconds", "lane", String.valueOf(lane), dispatchLanes.getAverageRunMs(lane) / 1000);
+        }
+        writer.type("signaling_dispatch_failed_total", "counter");
+        for (int lane = 0; lane < dispatchLanes.getLaneCount(); lane++) {
+            writer.sample("signaling_dispatch_failed_total", "lane", String.valueOf(lane), dispatchLanes.getFailedCount(lane));
+        }
+
+        writer.counter("signaling_heartbeat_pings_total", sessionReaper.getPingCount());
+        writer.counter("signaling_heartbeat_evictions_total", sessionReaper.getHeartbeatEvictionCount());
+        writer.counter("signaling_stalled_evictions_total", sessionReaper.getStalledEvictionCount());
+
+        writer.gauge("signaling_pending_targets", pendingFrameBuffer.getTargetCount());
+        writer.gauge("signaling_pending_bytes", pendingFrameBuffer.getBufferedBytes());
+        writer.counter("signaling_pending_buffered_total", pendingFrameBuffer.getBufferedCount());
+        writer.counter("signaling_pending_delivered_total", pendingFrameBuffer.getDeliveredCount());
+        writer.counter("signaling_pending_expired_total", pendingFrameBuffer.getExpiredCount());
+        writer.counter("signaling_pending_evicted_total", pendingFrameBuffer.getEvictedCount());
+        writer.counter("signaling_pending_rejected_total", pendingFrameBuffer.getRejectedCount());
+        writer.gauge("signaling_pending_hit_ratio", pendingFrameBuffer.getHitRate());
+
+        writer.gauge("signaling_cluster_owned_uids", clusterRouter.getOwnedUidCount());
+        writer.counter("signaling_cluster_forwarded_total", clusterRouter.getForwardedCount());
+        writer.counter("signaling_cluster_received_total", clusterRouter.getReceivedCount());
+        writer.counter("signaling_cluster_unroutable_total", clusterRouter.getUnroutableCount());
+
+        writer.counter("signaling_rejected_handshakes_total", admissionControl.getRejectedHandshakeCount());
+        writer.counter("signaling_rejected_sessions_total", admissionControl.getRejectedSessionCount());
+        writer.counter("signaling_throttled_sdp_total", admissionControl.getThrottledSdpCount());
+        writer.counter("signaling_throttled_candidates_total", admissionControl.getThrottledCandidateCount());
+
+        writer.gauge("signaling_call_pins", callPinRegistry.getPinCount());
+        writer.type("signaling_deliveries_total", "counter");
+        writer.sample("signaling_deliveries_total", "mode", "broadcast", callPinRegistry.getBroadcastCount());
+        writer.sample("signaling_deliveries_total", "mode", "pinned", callPinRegistry.getPinnedCount());
+        writer.sample("signaling_deliveries_total", "mode", "addressed", callPinRegistry.getAddressedCount());
+
+        for (MetricsSource source : sources) {
+            source.writeMetrics(writer);
+        }
+
+        return writer.toString();
+    }
+
+    private static void histogram(PrometheusWriter writer, String name, LatencyHistogram histogram) {
+        writer.type(name, "histogram");
+        for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+            double bound = histogram.getBucketBoundSeconds(bucket);
+            writer.sample(name + "_bucket", "le", Double.isInfinite(bound) ? "+Inf" : String.valueOf(bound), histogram.getCumulativeCount(bucket));
+        }
+        writer.value(name + "_sum", histogram.getTotalSeconds());
+        writer.value(name + "_count", histogram.getCount());
+    }
+}
@@ -0,0 +1,404 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+@Component
+@ConfigurationProperties(prefix = "signaling")
+public class SignalingProperties {
+    private final Outbound outbound = new Outbound();
+    private final Lifecycle lifecycle = new Lifecycle();
+    private final Presence presence = new Presence();
+    private final ChatChanges chatChanges = new ChatChanges();
+    private final PendingFrames pendingFrames = new PendingFrames();
+    private final CandidateBatching candidateBatching = new CandidateBatching();
+    private final Cluster cluster = new Cluster();
+    private final Limits limits = new Limits();
+    private final CallPinning callPinning = new CallPinning();
+    private final Dispatch dispatch = new Dispatch();
+
+    public Outbound getOutbound() {
+        return outbound;
+    }
+
+    public Lifecycle getLifecycle() {
+        return lifecycle;
+    }
+
+    public Presence getPresence() {
+        return presence;
+    }
+
+    public ChatChanges getChatChanges() {
+        return chatChanges;
+    }
+
+    public PendingFrames getPendingFrames() {
+        return pendingFrames;
+    }
+
+    public CandidateBatching getCandidateBatching() {
+        return candidateBatching;
+    }
+
+    public Cluster getCluster() {
+        return cluster;
+    }
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    public CallPinning getCallPinning() {
+        return callPinning;
+    }
+
+    public Dispatch getDispatch() {
+        return dispatch;
+    }
+
+    public enum OverflowPolicy {
+        // drop oldest queued droppable frames (ice candidates) to make room for new ones
+        DROP_OLDEST,
+        // close the session as soon as its queue is full
+        DISCONNECT
+    }
+
+    public static class Outbound {
+        // threads, draining outbound queues of all sessions
+        private int writerThreads = 4;
+        // max queued frames per session
+        private int maxFrames = 256;
+        // max queued payload bytes per session
+        private int maxBytes = 1024 * 1024;
+        // session is closed, if single send takes longer or oldest queued frame waits longer, than this
+        private long sendTimeLimitMs = 10000;
+        // what to do with droppable frames, when queue is full, non-droppable frames always cause disconnect
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+        public int getWriterThreads() {
+            return writerThreads;
+        }
+
+        public int getMaxFrames() {
+            return maxFrames;
+        }
+
+        public int getMaxBytes() {
+            return maxBytes;
+        }
+
+        public long getSendTimeLimitMs() {
+            return sendTimeLimitMs;
+        }
+
+        public OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setWriterThreads(int writerThreads) {
+            this.writerThreads = writerThreads;
+        }
+
+        public void setMaxFrames(int maxFrames) {
+            this.maxFrames = maxFrames;
+        }
+
+        public void setMaxBytes(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        public void setSendTimeLimitMs(long sendTimeLimitMs) {
+            this.sendTimeLimitMs = sendTimeLimitMs;
+        }
+
+        public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+    }
+
+    public static class Lifecycle {
+        // resolution and size of the timer wheel, serving all session timeouts
+        private long tickMs = 100;
+        private int wheelSize = 512;
+        // session, that did not send peer_init during this time, is closed
+        private long handshakeTimeoutMs = 10000;
+        // session, that sent nothing during this time, is closed, 0 disables idle timeout
+        private long idleTimeoutMs = 0;
+        // interval of sweeping sessions, that were closed without close event
+        private long sweepIntervalMs = 5000;
+        // interval of pings to initialized sessions, 0 disables heartbeats
+        private long heartbeatIntervalMs = 15000;
+        // session, that did not answer this many pings in a row, is treated as half-open and closed
+        private int maxMissedHeartbeats = 2;
+
+        public long getTickMs() {
+            return tickMs;
+        }
+
+        public int getWheelSize() {
+            return wheelSize;
+        }
+
+        public long getHandshakeTimeoutMs() {
+            return handshakeTimeoutMs;
+        }
+
+        public long getIdleTimeoutMs() {
+            return idleTimeoutMs;
+        }
+
+        public long getSweepIntervalMs() {
+            return sweepIntervalMs;
+        }
+
+        public long getHeartbeatIntervalMs() {
+            return heartbeatIntervalMs;
+        }
+
+        public int getMaxMissedHeartbeats() {
+            return maxMissedHeartbeats;
+        }
+
+        public void setTickMs(long tickMs) {
+            this.tickMs = tickMs;
+        }
+
+        public void setWheelSize(int wheelSize) {
+            this.wheelSize = wheelSize;
+        }
+
+        public void setHandshakeTimeoutMs(long handshakeTimeoutMs) {
+            this.handshakeTimeoutMs = handshakeTimeoutMs;
+        }
+
+        public void setIdleTimeoutMs(long idleTimeoutMs) {
+            this.idleTimeoutMs = idleTimeoutMs;
+        }
+
+        public void setSweepIntervalMs(long sweepIntervalMs) {
+            this.sweepIntervalMs = sweepIntervalMs;
+        }
+
+        public void setHeartbeatIntervalMs(long heartbeatIntervalMs) {
+            this.heartbeatIntervalMs = heartbeatIntervalMs;
+        }
+
+        public void setMaxMissedHeartbeats(int maxMissedHeartbeats) {
+            this.maxMissedHeartbeats = maxMissedHeartbeats;
+        }
+    }
+
+    public static class Presence {
+        // presence changes are collected and pushed once per this interval, so flapping connections cause no fan-out storms
+        private long debounceMs = 2000;
+
+        public long getDebounceMs() {
+            return debounceMs;
+        }
+
+        public void setDebounceMs(long debounceMs) {
+            this.debounceMs = debounceMs;
+        }
+    }
+
+    public static class ChatChanges {
+        // chat changes of each recipient are collected and pushed once per this interval
+        private long windowMs = 250;
+
+        public long getWindowMs() {
+            return windowMs;
+        }
+
+        public void setWindowMs(long windowMs) {
+            this.windowMs = windowMs;
+        }
+    }
+
+    public static class PendingFrames {
+        // frames for not yet connected peers are kept this long
+        private long ttlMs = 5000;
+        // oldest frames of a peer are evicted above this count
+        private int maxFramesPerTarget = 64;
+        // new frames are rejected, when all kept frames take this much payload
+        private long maxBytes = 8 * 1024 * 1024;
+
+        public long getTtlMs() {
+            return ttlMs;
+        }
+
+        public int getMaxFramesPerTarget() {
+            return maxFramesPerTarget;
+        }
+
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        public void setTtlMs(long ttlMs) {
+            this.ttlMs = ttlMs;
+        }
+
+        public void setMaxFramesPerTarget(int maxFramesPerTarget) {
+            this.maxFramesPerTarget = maxFramesPerTarget;
+        }
+
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    public static class CandidateBatching {
+        // candidates are batched only if enabled here and receiving client asked for it in peer_init
+        private boolean enabled = false;
+        // candidates of one sender to one target are collected during this window and sent as a single frame
+        private long windowMs = 10;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public long getWindowMs() {
+            return windowMs;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public void setWindowMs(long windowMs) {
+            this.windowMs = windowMs;
+        }
+    }
+
+    public static class Cluster {
+        // if enabled, frames for uids, connected to other nodes, are forwarded through cluster transport
+        private boolean enabled = false;
+        // nodes with the same cluster name form a cluster
+        private String name = "signaling";
+        // unique id of this node, random by default
+        private String nodeId = UUID.randomUUID().toString();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public void setNodeId(String nodeId) {
+            this.nodeId = nodeId;
+        }
+    }
+
+    public static class Limits {
+        // per session rates of sdp (and room) and candidate frames, 0 disables the limit
+        private double sdpPerSecond = 5;
+        private int sdpBurst = 20;
+        private double candidatesPerSecond = 50;
+        private int candidateBurst = 200;
+        // sessions of the same uid above this count are closed on peer_init
+        private int maxSessionsPerUid = 8;
+        // handshakes are rejected, when node has this many sessions
+        private int maxConnections = 20000;
+
+        public double getSdpPerSecond() {
+            return sdpPerSecond;
+        }
+
+        public int getSdpBurst() {
+            return sdpBurst;
+        }
+
+        public double getCandidatesPerSecond() {
+            return candidatesPerSecond;
+        }
+
+        public int getCandidateBurst() {
+            return candidateBurst;
+        }
+
+        public int getMaxSessionsPerUid() {
+            return maxSessionsPerUid;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setSdpPerSecond(double sdpPerSecond) {
+            this.sdpPerSecond = sdpPerSecond;
+        }
+
+        public void setSdpBurst(int sdpBurst) {
+            this.sdpBurst = sdpBurst;
+        }
+
+        public void setCandidatesPerSecond(double candidatesPerSecond) {
+            this.candidatesPerSecond = candidatesPerSecond;
+        }
+
+        public void setCandidateBurst(int candidateBurst) {
+            this.candidateBurst = candidateBurst;
+        }
+
+        public void setMaxSessionsPerUid(int maxSessionsPerUid) {
+            this.maxSessionsPerUid = maxSessionsPerUid;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+    }
+
+    public static class CallPinning {
+        // frames between two uids go only to the session, that answered, until there are no frames during this time
+        private long idleMs = 30000;
+
+        public long getIdleMs() {
+            return idleMs;
+        }
+
+        public void setIdleMs(long idleMs) {
+            this.idleMs = idleMs;
+        }
+    }
+
+    public static class Dispatch {
+        // single threaded lanes, inbound frames are handled on, 0 to handle them on container threads
+        private int lanes = Runtime.getRuntime().availableProcessors();
+        // frames, waiting on a single lane, session of the sender is closed, when its lane is full
+        private int maxQueuedPerLane = 10000;
+
+        public int getLanes() {
+            return lanes;
+        }
+
+        public void setLanes(int lanes) {
+            this.lanes = lanes;
+        }
+
+        public int getMaxQueuedPerLane() {
+            return maxQueuedPerLane;
+        }
+
+        public void setMaxQueuedPerLane(int maxQueuedPerLane) {
+            this.maxQueuedPerLane = maxQueuedPerLane;
+        }
+    }
+}
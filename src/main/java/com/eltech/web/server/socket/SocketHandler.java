@@ -1,161 +1,270 @@
 package com.eltech.web.server.socket;
 
-import com.google.gson.*;
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.user.controller.ChatController;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.Set;
 
 @Component
-public class SocketHandler extends TextWebSocketHandler {
+public class SocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
     public static final String EVENT_PEER_INIT = "peer_init";
     public static final String EVENT_SDP = "sdp";
     public static final String EVENT_CANDIDATE = "candidate";
+    public static final String EVENT_ROOM = "room";
+    // sent to the peer after peer_init, so it can learn its session id, other peers address device sessions with it
+    public static final String EVENT_SESSION = "session";
 
-    private static class PeerSession {
-        public final WebSocketSession session;
-        public String peerUid = null;
+    private final SessionDirectory sessionDirectory;
+    private final OutboundWriter outboundWriter;
+    private final SessionReaper sessionReaper;
+    private final GroupMemberCache groupMemberCache;
+    private final ClusterRouter clusterRouter;
+    private final PendingFrameBuffer pendingFrameBuffer;
+    private final CandidateBatcher candidateBatcher;
+    private final AdmissionControl admissionControl;
+    private final CallPinRegistry callPinRegistry;
+    private final DispatchLanes dispatchLanes;
+    private final SignalingMetrics metrics;
+    private final EventLog eventLog;
 
-        PeerSession(WebSocketSession session) {
-            this.session = session;
-        }
+    public SocketHandler(SessionDirectory sessionDirectory, OutboundWriter outboundWriter, SessionReaper sessionReaper,
+                         GroupMemberCache groupMemberCache, ClusterRouter clusterRouter, PendingFrameBuffer pendingFrameBuffer,
+                         CandidateBatcher candidateBatcher,
+                         AdmissionControl admissionControl, CallPinRegistry callPinRegistry,
+                         DispatchLanes dispatchLanes, SignalingMetrics metrics, EventLog eventLog) {
+        this.sessionDirectory = sessionDirectory;
+        this.outboundWriter = outboundWriter;
+        this.sessionReaper = sessionReaper;
+        this.groupMemberCache = groupMemberCache;
+        this.clusterRouter = clusterRouter;
+        this.pendingFrameBuffer = pendingFrameBuffer;
+        this.candidateBatcher = candidateBatcher;
+        this.admissionControl = admissionControl;
+        this.callPinRegistry = callPinRegistry;
+        this.dispatchLanes = dispatchLanes;
+        this.metrics = metrics;
+        this.eventLog = eventLog;
+    }
 
-        public void setPeerUid(String peerUid) {
-            this.peerUid = peerUid;
-        }
+    @Override
+    public void handleTextMessage(WebSocketSession session, TextMessage message) {
+        dispatch(session, () -> handleFrame(session, message));
+    }
+
+    // sdp and candidate frames of binary sub-protocol clients
+    @Override
+    public void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        // container may reuse the buffer of an inbound message, once this method returns, and the frame is handled later on a lane
+        ByteBuffer payload = message.getPayload().duplicate();
+        byte[] copy = new byte[payload.remaining()];
+        payload.get(copy);
+        BinaryMessage ownMessage = new BinaryMessage(copy, message.isLast());
+        dispatch(session, () -> handleBinaryFrame(session, ownMessage));
+    }
 
-        public String getPeerUid() {
-            return peerUid;
+    @Override
+    public List<String> getSubProtocols() {
+        // clients, that do not ask for it, use json text frames
+        return Collections.singletonList(BinarySignalingFrame.PROTOCOL);
+    }
+
+    private void dispatch(WebSocketSession session, Runnable handler) {
+        // frames of a session are bound to a single uid, so hashing by it keeps order per sender,
+        // the session id is used only if handshake did not bind the uid
+        String boundUid = ChatUserHandshakeInterceptor.getBoundUid(session.getAttributes());
+        if (!dispatchLanes.dispatch(boundUid != null ? boundUid : session.getId(), handler)) {
+            // node can not keep up with the sender
+            PeerSession peer = sessionDirectory.getBySessionId(session.getId());
+            if (peer != null) {
+                peer.closeSession(CloseStatus.SESSION_NOT_RELIABLE.withReason("dispatch lane is full"));
+            }
         }
+    }
 
-        boolean isOpened() {
-            return session.isOpen();
+    private void handleFrame(WebSocketSession session, TextMessage message) {
+        long startTime = System.nanoTime();
+        SignalingFrame frame;
+        try {
+            frame = SignalingFrame.parse(message.getPayload());
+        } catch (IOException e) {
+            // if data cannot be parsed, or type or payload cannot be acquired - ignore it
+            metrics.onDrop(SignalingMetrics.Drop.MALFORMED);
+            eventLog.warn("socket.malformed_frame", "signaling frame could not be parsed",
+                    "sessionId", session.getId(), "error", e.getMessage());
+            return;
         }
+        metrics.onEvent(frame.type);
+        handleEvent(session, message, frame);
+        metrics.getHandlerLatency().record(System.nanoTime() - startTime);
+    }
 
-        boolean isExpired() { return peerUid != null && !session.isOpen(); }
+    private void handleBinaryFrame(WebSocketSession session, BinaryMessage message) {
+        long startTime = System.nanoTime();
+        // payload is only read for routing fields and forwarded untouched
+        BinarySignalingFrame frame = BinarySignalingFrame.parse(message.getPayload());
+        if (frame == null) {
+            metrics.onDrop(SignalingMetrics.Drop.MALFORMED);
+            eventLog.warn("socket.malformed_binary_frame", "binary signaling frame header is invalid",
+                    "sessionId", session.getId(), "length", message.getPayloadLength());
+            return;
+        }
+        String type = frame.getEventType();
+        metrics.onEvent(type);
+        PeerSession sender = getValidSender(session, frame.senderUid);
+        if (sender != null) {
+            frame.readPayload(message.getPayload());
+            relay(sender, frame.senderUid, frame.targetUid, frame.targetSessionId, message, EVENT_CANDIDATE.equals(type), frame.offer);
+        }
+        metrics.getHandlerLatency().record(System.nanoTime() - startTime);
     }
 
-    private final Object mapLock = new Object();
-    private final Map<String, PeerSession> uninitializedSessions = new HashMap<>();
-    private final Map<String, PeerSession> peerSessionBySessionId = new HashMap<>();
-    private final Map<String, List<PeerSession>> peerSessionByUid = new HashMap<>();
+    private void handleEvent(WebSocketSession session, TextMessage message, SignalingFrame frame) {
+        if (EVENT_PEER_INIT.equals(frame.type)) {
+            // peer can only initialize as the user, it was authenticated as at handshake
+            String boundUid = ChatUserHandshakeInterceptor.getBoundUid(session.getAttributes());
+            if (boundUid == null || (frame.uid != null && !frame.uid.equals(boundUid))) {
+                return;
+            }
+            PeerSession peer = sessionDirectory.initialize(session.getId(), boundUid, admissionControl.getMaxSessionsPerUid());
+            if (peer != null && !peer.isInitialized()) {
+                // uid has too many sessions
+                admissionControl.onSessionRejected();
+                sessionDirectory.remove(session.getId());
+                peer.closeSession(CloseStatus.POLICY_VIOLATION.withReason("too many sessions"));
+            } else if (peer != null) {
+                peer.setAcceptsCandidateBatches(frame.batchCandidates);
+                sessionReaper.onInitialized(peer);
+                peer.send(new TextMessage("{\"type\":\"" + EVENT_SESSION + "\",\"payload\":{\"sessionId\":\"" + session.getId() + "\"}}"), false);
+            }
+        } else if (EVENT_SDP.equals(frame.type) || EVENT_CANDIDATE.equals(frame.type)) {
+            PeerSession sender = getValidSender(session, frame.senderUid);
+            if (sender != null) {
+                relay(sender, frame.senderUid, frame.targetUid, frame.targetSessionId, message, EVENT_CANDIDATE.equals(frame.type), frame.offer);
+            }
+        } else if (EVENT_ROOM.equals(frame.type)) {
+            PeerSession sender = getValidSender(session, frame.senderUid);
+            ChatController.ChatId chatId = new ChatController.ChatId(frame.chatId);
+            if (sender == null || !chatId.isGroupChat()) {
+                return;
+            }
+            // room frames are fanned out to many members, so they share the stricter sdp budget
+            if (!sender.tryAcquireSend(false)) {
+                admissionControl.onSdpThrottled();
+                return;
+            }
 
-    private static final int EXPIRED_SESSION_RELEASE_INTERVAL = 5000;
+            // sender sends a single frame, it is fanned out to all connected members of the group chat
+            Set<String> memberUids = groupMemberCache.getMemberUids(chatId.getId());
+            if (!memberUids.contains(sender.getPeerUid())) {
+                metrics.onDrop(SignalingMetrics.Drop.NOT_MEMBER);
+                return;
+            }
+            for (String memberUid : memberUids) {
+                if (!memberUid.equals(sender.getPeerUid()) && sessionDirectory.sendToUid(memberUid, message, false) == 0 && clusterRouter.isEnabled()) {
+                    // member could be connected to another node
+                    clusterRouter.routeToAbsentUid(memberUid, message, false);
+                }
+            }
+        }
+    }
 
-    private long lastExpiredSessionsRelease = System.currentTimeMillis();
+    /**
+     * Forwards sdp or candidate frame of any protocol to the target, it is only enqueued here, so slow receivers do not block the sender,
+     * candidates may be dropped for a slow receiver, sdp never is
+     */
+    private void relay(PeerSession sender, String senderUid, String targetUid, String targetSessionId, WebSocketMessage<?> message,
+                       boolean droppable, boolean offer) {
+        if (!sender.tryAcquireSend(droppable)) {
+            if (droppable) {
+                admissionControl.onCandidateThrottled();
+            } else {
+                admissionControl.onSdpThrottled();
+            }
+            return;
+        }
 
-    private int releaseExpiredSessions(Map<String, PeerSession> map) {
-        int initialSize = map.size();
-        map.entrySet().removeIf(entry -> entry.getValue().isExpired());
-        return initialSize - map.size();
-    }
+        // the sender answers the target from this device, so frames of the target to sender are pinned to it
+        callPinRegistry.onRelayed(sender, targetUid, offer);
 
-    private synchronized void releaseExpiredSessionsIfRequired() {
-        if (lastExpiredSessionsRelease + EXPIRED_SESSION_RELEASE_INTERVAL < System.currentTimeMillis()) {
-            lastExpiredSessionsRelease = System.currentTimeMillis();
-            new Thread(() -> {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException e) {
-                    return;
-                }
+        // batches are text frames, binary candidates go one by one
+        if (droppable && candidateBatcher.isEnabled() && message instanceof TextMessage) {
+            candidateBatcher.add(senderUid, targetUid, targetSessionId, (TextMessage) message);
+            return;
+        }
 
-                int releasedCount = 0;
-                synchronized (mapLock) {
-                    releasedCount += releaseExpiredSessions(uninitializedSessions);
-                    releasedCount += releaseExpiredSessions(peerSessionBySessionId);
+        // frames, kept for the target before it connected, are still being delivered, this one has to follow them
+        if (pendingFrameBuffer.addIfPending(targetUid, targetSessionId, message, droppable)) {
+            return;
+        }
 
-                    peerSessionByUid.forEach((key, value) -> value.removeIf(PeerSession::isExpired));
-                    peerSessionByUid.entrySet().removeIf(entry -> entry.getValue().isEmpty());
-                }
-                if (releasedCount > 0) {
-                    System.out.println("released " + releasedCount + " expired socket sessions, " + (uninitializedSessions.size() + peerSessionBySessionId.size()) + " sessions remaining");
-                }
-            }).start();
+        // addressed or pinned device session of the target, or all its sessions, until the call is answered
+        PeerSession[] targets = callPinRegistry.selectTargets(senderUid, targetUid, targetSessionId, offer);
+        if (targets.length == 0) {
+            // target is connected to another node, or not connected yet and frames will be delivered, when it sends peer_init,
+            // frames leave the node as text
+            WebSocketMessage<?> textMessage = message instanceof BinaryMessage ? BinarySignalingFrame.toText((BinaryMessage) message) : message;
+            clusterRouter.routeToAbsentUid(targetUid, textMessage, droppable);
+            return;
+        }
+        // frame is converted once for all target sessions of the other protocol
+        RelayFrame frame = new RelayFrame(message);
+        for (PeerSession target : targets) {
+            if (candidateBatcher.isEnabled() && !droppable) {
+                // sdp goes ahead of candidates, already queued for the target
+                target.sendUrgent(frame);
+            } else {
+                target.send(frame, droppable);
+            }
         }
     }
 
-    @Override
-    public void handleTextMessage(WebSocketSession session, TextMessage message) {
-        try {
-            JsonObject json = JsonParser.parseString(message.getPayload()).getAsJsonObject();
-            String type = json.get("type").getAsString();
-            JsonElement payload = json.get("payload");
-            handleEvent(session, message, type, payload);
-        } catch (JsonParseException | IllegalStateException e) {
-            // if data cannot be parsed, or type or payload cannot be acquired - ignore it
-            e.printStackTrace();
+    // returns session of the sender, if sender uid of the frame is the one, bound to the session
+    private PeerSession getValidSender(WebSocketSession session, String senderUid) {
+        // sender uid is bound to the session, so it is a single comparison
+        PeerSession sender = sessionDirectory.getBySessionId(session.getId());
+        if (sender == null || senderUid == null || !senderUid.equals(sender.getPeerUid())) {
+            metrics.onDrop(SignalingMetrics.Drop.INVALID_SENDER);
+            return null;
         }
-
-        releaseExpiredSessionsIfRequired();
+        sender.touch();
+        return sender;
     }
 
-    private static class EventPeerInit {
-        String uid;
+    @Override
+    protected void handlePongMessage(WebSocketSession session, PongMessage message) {
+        PeerSession peer = sessionDirectory.getBySessionId(session.getId());
+        if (peer != null) {
+            peer.onPong();
+        }
     }
 
-    private static class EventWithTargetPeer {
-        String senderUid;
-        String targetUid;
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+        PeerSession peer = sessionDirectory.addUninitialized(new PeerSession(session, outboundWriter.createQueue(session),
+                admissionControl.createSdpBucket(), admissionControl.createCandidateBucket()));
+        sessionReaper.onConnected(peer);
     }
 
-    private final Gson gson = new GsonBuilder().create();
-
-    private void handleEvent(WebSocketSession session, TextMessage message, String type, JsonElement payload) {
-        if (EVENT_PEER_INIT.equals(type)) {
-            try {
-                EventPeerInit event = gson.fromJson(payload, EventPeerInit.class);
-                synchronized (mapLock) {
-                    PeerSession peer = uninitializedSessions.remove(session.getId());
-                    if (peer != null) {
-                        // System.out.println("initialized peer " + event.uid);
-                        peer.setPeerUid(event.uid);
-                        peerSessionBySessionId.put(session.getId(), peer);
-                        peerSessionByUid.computeIfAbsent(peer.getPeerUid(), key -> new ArrayList<>()).add(peer);
-                    }
-                }
-            } catch (JsonParseException e) {
-                e.printStackTrace();
-            }
-        } else if (EVENT_SDP.equals(type) || EVENT_CANDIDATE.equals(type)) {
-            try {
-                EventWithTargetPeer event = gson.fromJson(payload, EventWithTargetPeer.class);
-
-                synchronized (mapLock) {
-                    // check if sender id is valid
-                    List<PeerSession> possibleSenders = peerSessionByUid.get(event.senderUid);
-                    if (possibleSenders == null || !possibleSenders.contains(peerSessionBySessionId.get(session.getId()))) {
-                        return;
-                    }
-
-                    // forward event to target
-                    List<PeerSession> targets = peerSessionByUid.get(event.targetUid);
-                    if (targets != null) {for (PeerSession target : targets) {
-                            try {
-                                target.session.sendMessage(message);
-                                // System.out.println("sending message from " + event.senderUid + " to " + event.targetUid + ", payload: " + message.getPayload());
-                            } catch (IOException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                    }
-                }
-            } catch (JsonParseException e) {
-                e.printStackTrace();
-            }
-        }
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
+        sessionDirectory.remove(session.getId());
     }
 
     @Override
-    public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        uninitializedSessions.put(session.getId(), new PeerSession(session));
-        releaseExpiredSessionsIfRequired();
+    public void handleTransportError(WebSocketSession session, Throwable exception) throws Exception {
+        sessionDirectory.remove(session.getId());
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hashed timer wheel, all timeouts are served by a single thread, that advances the wheel by one bucket each tick.
+ * Scheduling and cancelling are O(1) and take no lock, cancelled timeouts are dropped, when their bucket is visited.
+ * Timeout precision is one tick, tasks are run on the wheel thread, so they must not block.
+ */
+public class TimerWheel {
+    public class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled = false;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final String name;
+    private final long tickMs;
+    private final EventLog eventLog;
+    private final ArrayDeque<Timeout>[] buckets;
+    private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<>();
+    private final ScheduledExecutorService ticker;
+    // timeouts, that are held by the wheel, including cancelled ones, that were not dropped yet
+    private final AtomicInteger timeoutCount = new AtomicInteger();
+
+    // accessed only from wheel thread
+    private long tick = 0;
+    private final long startTime;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(String name, long tickMs, int wheelSize, EventLog eventLog) {
+        this.name = name;
+        this.tickMs = tickMs;
+        this.eventLog = eventLog;
+        this.buckets = new ArrayDeque[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayDeque<>();
+        }
+        this.startTime = System.currentTimeMillis();
+        this.ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::onTick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    public Timeout schedule(Runnable task, long delayMs) {
+        Timeout timeout = new Timeout(task, System.currentTimeMillis() + Math.max(0, delayMs));
+        timeoutCount.incrementAndGet();
+        pendingTimeouts.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        ticker.shutdownNow();
+    }
+
+    /**
+     * @return count of timeouts, that are held by the wheel, cancelled ones are held until their bucket is visited
+     */
+    public int getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    private void onTick() {
+        transferPendingTimeouts();
+
+        Iterator<Timeout> iterator = buckets[(int) (tick % buckets.length)].iterator();
+        while (iterator.hasNext()) {
+            Timeout timeout = iterator.next();
+            if (timeout.cancelled) {
+                iterator.remove();
+                timeoutCount.decrementAndGet();
+            } else if (timeout.remainingRounds <= 0) {
+                iterator.remove();
+                timeoutCount.decrementAndGet();
+                try {
+                    timeout.task.run();
+                } catch (RuntimeException e) {
+                    // task failure must not stop the wheel
+                    eventLog.error("socket.timer_task_failed", "timer wheel task failed", e, "wheel", name);
+                }
+            } else {
+                timeout.remainingRounds--;
+            }
+        }
+        tick++;
+    }
+
+    private void transferPendingTimeouts() {
+        Timeout timeout;
+        while ((timeout = pendingTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                timeoutCount.decrementAndGet();
+                continue;
+            }
+            // tick, at which timeout is due, but never earlier than current one
+            long dueTick = Math.max(tick, (timeout.deadline - startTime + tickMs - 1) / tickMs);
+            long ticksLeft = dueTick - tick;
+            timeout.remainingRounds = ticksLeft / buckets.length;
+            buckets[(int) (dueTick % buckets.length)].add(timeout);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.eltech.web.server.socket;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as generic cell rate algorithm: instead of counting tokens,
+ * it keeps the time, when the bucket would be full again, and moves it forward by one interval per taken token
+ */
+public class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrivalTime = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param ratePerSecond tokens, added per second, 0 or less means unlimited
+     * @param burst max tokens, that can be taken at once
+     */
+    public TokenBucket(double ratePerSecond, int burst) {
+        this.intervalNanos = ratePerSecond > 0 ? (long) (1_000_000_000L / ratePerSecond) : 0;
+        this.burstNanos = intervalNanos * Math.max(1, burst);
+    }
+
+    public boolean tryTake() {
+        if (intervalNanos == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        while (true) {
+            long tat = theoreticalArrivalTime.get();
+            long start = tat == Long.MIN_VALUE || tat - now < 0 ? now : tat;
+            long next = start + intervalNanos;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.eltech.web.server.socket.cluster;
+
+/**
+ * Message between signaling nodes
+ */
+public class ClusterMessage {
+    public enum Kind {
+        // uid has sessions on the sender node, sent to owner of the uid
+        REGISTER,
+        // uid has no more sessions on the sender node, sent to owner of the uid
+        UNREGISTER,
+        // signaling frame for the uid, sent to its owner, that forwards it to nodes holding its sessions
+        FRAME
+    }
+
+    private final Kind kind;
+    private final String senderNodeId;
+    private final String uid;
+    private final String payload;
+    private final boolean droppable;
+    // frame was already forwarded by owner and must only be delivered locally
+    private final boolean forwarded;
+
+    private ClusterMessage(Kind kind, String senderNodeId, String uid, String payload, boolean droppable, boolean forwarded) {
+        this.kind = kind;
+        this.senderNodeId = senderNodeId;
+        this.uid = uid;
+        this.payload = payload;
+        this.droppable = droppable;
+        this.forwarded = forwarded;
+    }
+
+    public static ClusterMessage register(String senderNodeId, String uid) {
+        return new ClusterMessage(Kind.REGISTER, senderNodeId, uid, null, false, false);
+    }
+
+    public static ClusterMessage unregister(String senderNodeId, String uid) {
+        return new ClusterMessage(Kind.UNREGISTER, senderNodeId, uid, null, false, false);
+    }
+
+    public static ClusterMessage frame(String senderNodeId, String uid, String payload, boolean droppable) {
+        return new ClusterMessage(Kind.FRAME, senderNodeId, uid, payload, droppable, false);
+    }
+
+    public ClusterMessage forwardedBy(String nodeId) {
+        return new ClusterMessage(kind, nodeId, uid, payload, droppable, true);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getSenderNodeId() {
+        return senderNodeId;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public boolean isDroppable() {
+        return droppable;
+    }
+
+    public boolean isForwarded() {
+        return forwarded;
+    }
+}
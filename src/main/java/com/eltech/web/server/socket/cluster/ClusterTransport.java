@@ -0,0 +1,29 @@
+package com.eltech.web.server.socket.cluster;
+
+/**
+ * Delivers messages between signaling nodes and reports cluster membership.
+ * Listener methods may be called from transport threads, but never concurrently for the same node.
+ */
+public interface ClusterTransport {
+    interface Listener {
+        void onMessage(ClusterMessage message);
+
+        void onNodeJoined(String nodeId);
+
+        void onNodeLeft(String nodeId);
+    }
+
+    /**
+     * Joins the cluster, listener is notified about all nodes, that are already in it
+     */
+    void start(String localNodeId, Listener listener);
+
+    /**
+     * Sends message to given node, message to unknown node is dropped.
+     * Messages, sent to a node, are delivered in the order of the calls, that sent them.
+     * Message to the local node is passed to its own listener the same way, as messages of other nodes.
+     */
+    void send(String nodeId, ClusterMessage message);
+
+    void stop();
+}
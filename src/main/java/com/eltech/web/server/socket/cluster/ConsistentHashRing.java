@@ -0,0 +1,69 @@
+package com.eltech.web.server.socket.cluster;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Immutable consistent hash ring of node ids, each node is placed on the ring several times,
+ * so keys are spread evenly and only keys of a joined or left node change owner
+ */
+public class ConsistentHashRing {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+    private final Set<String> nodes;
+
+    public ConsistentHashRing(Collection<String> nodes) {
+        this.nodes = Collections.unmodifiableSet(new TreeSet<>(nodes));
+        for (String node : this.nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                ring.put(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    public ConsistentHashRing withNode(String node) {
+        TreeSet<String> result = new TreeSet<>(nodes);
+        result.add(node);
+        return new ConsistentHashRing(result);
+    }
+
+    public ConsistentHashRing withoutNode(String node) {
+        TreeSet<String> result = new TreeSet<>(nodes);
+        result.remove(node);
+        return new ConsistentHashRing(result);
+    }
+
+    /**
+     * @return node, owning given key, or null if ring is empty
+     */
+    public String getOwner(String key) {
+        if (ring.isEmpty()) {
+            return null;
+        }
+        Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    // 64-bit fnv-1a with a final mix, cheap enough to be computed for each routed frame
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
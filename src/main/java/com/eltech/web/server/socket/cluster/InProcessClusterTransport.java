@@ -0,0 +1,88 @@
+package com.eltech.web.server.socket.cluster;
+
+import com.eltech.web.server.log.EventLog;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Transport between nodes, running in the same jvm, used for a single node deployment and to run several nodes in tests.
+ * Messages are delivered asynchronously, in order, on a single thread of the receiving node.
+ */
+public class InProcessClusterTransport implements ClusterTransport {
+    private static final Map<String, Map<String, InProcessClusterTransport>> CLUSTERS = new ConcurrentHashMap<>();
+
+    private final String clusterName;
+    private final EventLog eventLog;
+    private String localNodeId;
+    private Listener listener;
+    private ExecutorService executor;
+
+    public InProcessClusterTransport(String clusterName, EventLog eventLog) {
+        this.clusterName = clusterName;
+        this.eventLog = eventLog;
+    }
+
+    @Override
+    public void start(String localNodeId, Listener listener) {
+        this.localNodeId = localNodeId;
+        this.listener = listener;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-" + clusterName + "-" + localNodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Map<String, InProcessClusterTransport> nodes = CLUSTERS.computeIfAbsent(clusterName, key -> new ConcurrentHashMap<>());
+        synchronized (nodes) {
+            for (InProcessClusterTransport node : nodes.values()) {
+                node.deliver(() -> node.listener.onNodeJoined(localNodeId));
+                deliver(() -> listener.onNodeJoined(node.localNodeId));
+            }
+            nodes.put(localNodeId, this);
+        }
+    }
+
+    @Override
+    public void send(String nodeId, ClusterMessage message) {
+        Map<String, InProcessClusterTransport> nodes = CLUSTERS.get(clusterName);
+        InProcessClusterTransport node = nodes != null ? nodes.get(nodeId) : null;
+        if (node != null) {
+            node.deliver(() -> node.listener.onMessage(message));
+        }
+    }
+
+    @Override
+    public void stop() {
+        Map<String, InProcessClusterTransport> nodes = CLUSTERS.get(clusterName);
+        if (nodes != null) {
+            synchronized (nodes) {
+                if (nodes.remove(localNodeId, this)) {
+                    for (InProcessClusterTransport node : nodes.values()) {
+                        node.deliver(() -> node.listener.onNodeLeft(localNodeId));
+                    }
+                }
+            }
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void deliver(Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    eventLog.error("cluster.delivery_failed", "cluster message handler failed", e, "node", localNodeId);
+                }
+            });
+        } catch (RejectedExecutionException ignore) {
+            // node is stopped
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.eltech.web.server.user.cache;
+
+import com.eltech.web.server.metrics.MetricsSource;
+import com.eltech.web.server.metrics.PrometheusWriter;
+import com.eltech.web.server.user.entity.ChatUser;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Near cache of user summaries by uid and by username, bounded by size and by ttl.
+ * Lookups, that found nothing, are cached too, for a shorter time, so unknown uids of stale clients
+ * do not reach the database on every request. Entity lookups only use negative entries,
+ * found users are always loaded from the database, because entities may be modified and saved by the caller,
+ * so usernames, that are only looked up for entities, keep only negative entries.
+ * When a map is full, its least recently used half is evicted at once.
+ * Entries are invalidated by UserService on every change of uid, username or password, and once more
+ * after the transaction commits, then invalidation is sent to other instances through UserCacheBroadcast, if there is one.
+ */
+@Component
+public class UserCache implements UserCacheBroadcast.Listener, MetricsSource {
+    // result of a lookup, summary is null, if user was not found
+    private static class Entry {
+        final UserSummary summary;
+        final long expireTime;
+        volatile long lastUseTime = System.nanoTime();
+
+        Entry(UserSummary summary, long expireTime) {
+            this.summary = summary;
+            this.expireTime = expireTime;
+        }
+    }
+
+    private final UserCacheProperties settings;
+    private final UserCacheBroadcast broadcast;
+
+    private final Map<String, Entry> entriesByUid = new ConcurrentHashMap<>();
+    private final Map<String, Entry> entriesByUsername = new ConcurrentHashMap<>();
+    // incremented on each invalidation, lookups, that started before it, do not store their results
+    private final AtomicLong version = new AtomicLong();
+    private final Object evictionLock = new Object();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder negativeHitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+    private final LongAdder invalidationCount = new LongAdder();
+
+    public UserCache(UserCacheProperties settings, ObjectProvider<UserCacheBroadcast> broadcastProvider) {
+        this.settings = settings;
+        this.broadcast = broadcastProvider.getIfAvailable();
+        if (broadcast != null) {
+            broadcast.start(this);
+        }
+    }
+
+    public UserSummary getByUid(String uid, Function<String, ChatUser> loader) {
+        Entry entry = get(entriesByUid, uid);
+        if (entry != null) {
+            (entry.summary != null ? hitCount : negativeHitCount).increment();
+            return entry.summary;
+        }
+        missCount.increment();
+        long startVersion = version.get();
+        UserSummary summary = UserSummary.of(loader.apply(uid));
+        put(startVersion, uid, null, summary);
+        return summary;
+    }
+
+    /**
+     * Missing uids are loaded with a single call of loader
+     * @return summaries by uid, uids without user are absent
+     */
+    public Map<String, UserSummary> getByUids(Collection<String> uids, Function<Collection<String>, Collection<ChatUser>> loader) {
+        Map<String, UserSummary> result = new HashMap<>();
+        List<String> missingUids = new ArrayList<>();
+        for (String uid : uids) {
+            Entry entry = get(entriesByUid, uid);
+            if (entry == null) {
+                missingUids.add(uid);
+            } else if (entry.summary != null) {
+                hitCount.increment();
+                result.put(uid, entry.summary);
+            } else {
+                negativeHitCount.increment();
+            }
+        }
+        if (missingUids.isEmpty()) {
+            return result;
+        }
+
+        missCount.add(missingUids.size());
+        long startVersion = version.get();
+        for (ChatUser user : loader.apply(missingUids)) {
+            UserSummary summary = UserSummary.of(user);
+            result.put(user.getUid(), summary);
+            put(startVersion, user.getUid(), null, summary);
+        }
+        for (String uid : missingUids) {
+            if (!result.containsKey(uid)) {
+                put(startVersion, uid, null, null);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Loads user entity, unless uid is known to have no user
+     */
+    public ChatUser loadByUid(String uid, Function<String, ChatUser> loader) {
+        return load(entriesByUid, uid, null, loader);
+    }
+
+    /**
+     * Loads user entity, unless username is known to have no user
+     */
+    public ChatUser loadByUsername(String username, Function<String, ChatUser> loader) {
+        return load(entriesByUsername, null, username, loader);
+    }
+
+    private ChatUser load(Map<String, Entry> entries, String uid, String username, Function<String, ChatUser> loader) {
+        String key = uid != null ? uid : username;
+        Entry entry = get(entries, key);
+        if (entry != null && entry.summary == null) {
+            negativeHitCount.increment();
+            return null;
+        }
+        missCount.increment();
+        long startVersion = version.get();
+        ChatUser user = loader.apply(key);
+        put(startVersion, uid, username, UserSummary.of(user));
+        return user;
+    }
+
+    /**
+     * Drops entries of given uid and username (both may be null) on this and other instances.
+     * Inside a transaction entries are dropped once more after commit, because concurrent lookups
+     * could load the old row again, until the change is committed.
+     */
+    public void invalidate(String uid, String username) {
+        invalidateLocal(uid, username);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    invalidateLocal(uid, username);
+                    publish(uid, username);
+                }
+            });
+        } else {
+            publish(uid, username);
+        }
+    }
+
+    @Override
+    public void onInvalidate(String uid, String username) {
+        invalidateLocal(uid, username);
+    }
+
+    private void invalidateLocal(String uid, String username) {
+        version.incrementAndGet();
+        invalidationCount.increment();
+        if (uid != null) {
+            entriesByUid.remove(uid);
+        }
+        if (username != null) {
+            entriesByUsername.remove(username);
+        }
+    }
+
+    private void publish(String uid, String username) {
+        if (broadcast != null) {
+            broadcast.publish(uid, username);
+        }
+    }
+
+    private Entry get(Map<String, Entry> entries, String key) {
+        if (!settings.isEnabled() || key == null) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expireTime <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        if (entry != null) {
+            entry.lastUseTime = System.nanoTime();
+        }
+        return entry;
+    }
+
+    // found user is stored only by uid, no lookup by username reads it, missing one by the key, it was looked up with
+    private void put(long startVersion, String uid, String username, UserSummary summary) {
+        if (!settings.isEnabled() || version.get() != startVersion) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (summary != null) {
+            put(entriesByUid, summary.getUid(), new Entry(summary, now + settings.getTtlMs()));
+        } else {
+            Entry entry = new Entry(null, now + settings.getNegativeTtlMs());
+            put(entriesByUid, uid, entry);
+            put(entriesByUsername, username, entry);
+        }
+    }
+
+    private void put(Map<String, Entry> entries, String key, Entry entry) {
+        if (key == null) {
+            return;
+        }
+        evictIfFull(entries);
+        entries.put(key, entry);
+    }
+
+    // least recently used half of entries is evicted at once, so sorting use times is amortized over many loads
+    private void evictIfFull(Map<String, Entry> entries) {
+        if (entries.size() < settings.getMaxEntries()) {
+            return;
+        }
+        synchronized (evictionLock) {
+            if (entries.size() < settings.getMaxEntries()) {
+                return;
+            }
+            long[] useTimes = entries.values().stream().mapToLong(entry -> entry.lastUseTime).toArray();
+            if (useTimes.length == 0) {
+                return;
+            }
+            Arrays.sort(useTimes);
+            long evictedUseTime = useTimes[useTimes.length / 2];
+            int sizeBefore = entries.size();
+            entries.values().removeIf(entry -> entry.lastUseTime <= evictedUseTime);
+            evictionCount.add(Math.max(0, sizeBefore - entries.size()));
+        }
+    }
+
+    public int getEntryCount() {
+        return entriesByUid.size() + entriesByUsername.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getNegativeHitCount() {
+        return negativeHitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidationCount.sum();
+    }
+
+    @Override
+    public void writeMetrics(PrometheusWriter writer) {
+        writer.type("user_cache_lookups_total", "counter");
+        writer.sample("user_cache_lookups_total", "result", "hit", hitCount.sum());
+        writer.sample("user_cache_lookups_total", "result", "negative_hit", negativeHitCount.sum());
+        writer.sample("user_cache_lookups_total", "result", "miss", missCount.sum());
+        writer.gauge("user_cache_entries", getEntryCount());
+        writer.counter("user_cache_evictions_total", evictionCount.sum());
+        writer.counter("user_cache_invalidations_total", invalidationCount.sum());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (broadcast != null) {
+            broadcast.stop();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.eltech.web.server.user.cache;
+
+/**
+ * Delivers user cache invalidations to other instances of the server. If there is no bean of this type,
+ * invalidations stay local, which is enough for a single instance.
+ */
+public interface UserCacheBroadcast {
+    interface Listener {
+        /**
+         * @param uid uid to invalidate or null
+         * @param username username to invalidate or null
+         */
+        void onInvalidate(String uid, String username);
+    }
+
+    void start(Listener listener);
+
+    /**
+     * Sends invalidation to all other instances, local cache is already invalidated by the caller
+     */
+    void publish(String uid, String username);
+
+    void stop();
+}
@@ -0,0 +1,49 @@
+package com.eltech.web.server.user.cache;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "user-cache")
+public class UserCacheProperties {
+    // when disabled, every lookup goes to the database
+    private boolean enabled = true;
+    // max entries per key (uid, username), least recently used half is evicted, when it is reached
+    private int maxEntries = 100000;
+    // lifetime of a found user, bounds staleness, if an invalidation from other instance is lost
+    private long ttlMs = 60000;
+    // lifetime of a lookup, that found nothing
+    private long negativeTtlMs = 5000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public long getTtlMs() {
+        return ttlMs;
+    }
+
+    public void setTtlMs(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    public long getNegativeTtlMs() {
+        return negativeTtlMs;
+    }
+
+    public void setNegativeTtlMs(long negativeTtlMs) {
+        this.negativeTtlMs = negativeTtlMs;
+    }
+}
@@ -0,0 +1,35 @@
+package com.eltech.web.server.user.cache;
+
+import com.eltech.web.server.user.entity.ChatUser;
+
+/**
+ * Immutable public part of a user, serialized the same way, as ChatUser. Unlike the entity,
+ * it can be shared between requests and can not be saved back with stale collections.
+ */
+public class UserSummary {
+    private final Long id;
+    private final String uid;
+    private final String username;
+
+    public UserSummary(Long id, String uid, String username) {
+        this.id = id;
+        this.uid = uid;
+        this.username = username;
+    }
+
+    public static UserSummary of(ChatUser user) {
+        return user != null ? new UserSummary(user.getId(), user.getUid(), user.getUsername()) : null;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getUid() {
+        return uid;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+}
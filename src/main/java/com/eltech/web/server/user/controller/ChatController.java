@@ -1,10 +1,15 @@
 package com.eltech.web.server.user.controller;
 
+import com.eltech.web.server.socket.GroupMemberCache;
+import com.eltech.web.server.user.cache.UserSummary;
 import com.eltech.web.server.user.entity.ChatUser;
 import com.eltech.web.server.user.entity.Dialog;
 import com.eltech.web.server.user.entity.GroupChat;
+import com.eltech.web.server.user.repo.ChatListRow;
+import com.eltech.web.server.user.service.ChatActivityBuffer;
 import com.eltech.web.server.user.service.DialogService;
 import com.eltech.web.server.user.service.GroupChatService;
+import com.eltech.web.server.user.service.UserResolver;
 import com.eltech.web.server.user.service.UserService;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -13,19 +18,27 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 @RestController
 @RequestMapping(path = "/api/chat")
 public class ChatController {
+    private static final int MAX_PAGE_SIZE = 100;
+
     private final UserService userService;
     private final DialogService dialogService;
     private final GroupChatService groupChatService;
+    private final UserResolver userResolver;
+    private final ChatActivityBuffer activityBuffer;
+    private final GroupMemberCache groupMemberCache;
 
-    public ChatController(UserService userService, DialogService dialogService, GroupChatService groupChatService) {
+    public ChatController(UserService userService, DialogService dialogService, GroupChatService groupChatService,
+                          UserResolver userResolver, ChatActivityBuffer activityBuffer, GroupMemberCache groupMemberCache) {
         this.userService = userService;
         this.dialogService = dialogService;
         this.groupChatService = groupChatService;
+        this.userResolver = userResolver;
+        this.activityBuffer = activityBuffer;
+        this.groupMemberCache = groupMemberCache;
     }
 
 
@@ -69,6 +82,16 @@ public class ChatController {
             this.id = 0;
         }
 
+        // string id of a dialog, as clients see it
+        public static String ofDialog(long dialogId) {
+            return ChatType.DIALOG.idPrefix + dialogId;
+        }
+
+        // string id of a group chat, as clients see it
+        public static String ofGroupChat(long groupChatId) {
+            return ChatType.GROUP_CHAT.idPrefix + groupChatId;
+        }
+
         public ChatType getType() {
             return type;
         }
@@ -84,6 +107,10 @@ public class ChatController {
         public boolean isValid() {
             return type != null;
         }
+
+        public boolean isGroupChat() {
+            return type == ChatType.GROUP_CHAT;
+        }
     }
 
     private class UniversalChatWrap {
@@ -94,25 +121,33 @@ public class ChatController {
         private final List<String> targets;
 
         public UniversalChatWrap(ChatUser user, Dialog dialog) {
-            chatId = ChatType.DIALOG.idPrefix + dialog.getId();
+            chatId = ChatId.ofDialog(dialog.getId());
             chatType = ChatType.DIALOG;
             targets = Collections.singletonList(dialog.getTarget());
-            lastActivityTime = dialog.getLastActivityTime();
+            lastActivityTime = activityBuffer.getDialogActivityTime(dialog.getId(), dialog.getLastActivityTime());
 
             String targetUid = dialog.getTarget();
-            ChatUser targetUser = userService.getByUid(targetUid);
+            UserSummary targetUser = userResolver.resolve(targetUid);
             chatTitle = targetUser != null ? targetUser.getUsername() : targetUid;
         }
 
+        public UniversalChatWrap(ChatType chatType, long id, String chatTitle, long lastActivityTime, List<String> targets) {
+            this.chatId = chatType.idPrefix + id;
+            this.chatType = chatType;
+            this.chatTitle = chatTitle;
+            this.lastActivityTime = lastActivityTime;
+            this.targets = targets;
+        }
+
         public UniversalChatWrap(ChatUser user, GroupChat groupChat) {
-            chatId = ChatType.GROUP_CHAT.idPrefix + groupChat.getId();
+            chatId = ChatId.ofGroupChat(groupChat.getId());
             chatType = ChatType.GROUP_CHAT;
             chatTitle = groupChat.getName();
             targets = groupChat.getUsers().stream()
                     .filter(usr -> !usr.getId().equals(user.getId()))
                     .map(ChatUser::getUid)
                     .collect(Collectors.toList());
-            lastActivityTime = groupChat.getLastActivityTime();
+            lastActivityTime = activityBuffer.getGroupChatActivityTime(groupChat.getId(), groupChat.getLastActivityTime());
         }
 
         public String getChatId() {
@@ -137,13 +172,110 @@ public class ChatController {
     }
 
 
+    // with buffered, times are overlaid with activity times, that are not written yet
+    private List<UniversalChatWrap> toDialogWraps(List<ChatListRow> rows, boolean buffered) {
+        List<UniversalChatWrap> dialogs = new ArrayList<>(rows.size());
+        for (ChatListRow row : rows) {
+            String title = row.getTitle() != null ? row.getTitle() : row.getTargetUid();
+            dialogs.add(new UniversalChatWrap(ChatType.DIALOG, row.getChatId(), title,
+                    buffered ? activityBuffer.getDialogActivityTime(row.getChatId(), row.getLastActivityTime()) : row.getLastActivityTime(),
+                    Collections.singletonList(row.getTargetUid())));
+        }
+        return dialogs;
+    }
+
+    // rows of the same group chat must be adjacent, a row with null target is a chat without other members
+    private List<UniversalChatWrap> toGroupChatWraps(List<ChatListRow> rows, boolean buffered) {
+        List<UniversalChatWrap> groupChats = new ArrayList<>();
+        for (int i = 0; i < rows.size(); ) {
+            ChatListRow row = rows.get(i);
+            List<String> targets = new ArrayList<>();
+            for (; i < rows.size() && rows.get(i).getChatId() == row.getChatId(); i++) {
+                if (rows.get(i).getTargetUid() != null) {
+                    targets.add(rows.get(i).getTargetUid());
+                }
+            }
+            groupChats.add(new UniversalChatWrap(ChatType.GROUP_CHAT, row.getChatId(), row.getTitle(),
+                    buffered ? activityBuffer.getGroupChatActivityTime(row.getChatId(), row.getLastActivityTime()) : row.getLastActivityTime(),
+                    targets));
+        }
+        return groupChats;
+    }
+
+    /**
+     * Without limit returns all chats of the user, otherwise returns a page of at most limit chats (capped by MAX_PAGE_SIZE),
+     * next page is requested with beforeTime and beforeChatId set to lastActivityTime and chatId of the last chat of the page.
+     * Chats are ordered by last activity time desc, dialogs go before group chats with the same time.
+     */
     @GetMapping(path = "/list", produces = MediaType.APPLICATION_JSON_VALUE)
-    public List<UniversalChatWrap> listChats(@AuthenticationPrincipal ChatUser _user) {
-        ChatUser user = userService.fetch(_user);
-        return Stream.concat(
-                user.getDialogs().stream().map(dialog -> new UniversalChatWrap(user, dialog)),
-                user.getGroupChats().stream().map(groupChat -> new UniversalChatWrap(user, groupChat))
-        ).sorted(Comparator.comparingLong(chat -> -chat.getLastActivityTime())).collect(Collectors.toList());
+    public List<UniversalChatWrap> listChats(@AuthenticationPrincipal ChatUser user,
+                                             @RequestParam(name = "limit", required = false) Integer limit,
+                                             @RequestParam(name = "beforeTime", required = false) Long beforeTime,
+                                             @RequestParam(name = "beforeChatId", required = false) String beforeChatId) {
+        if (limit != null) {
+            return listChatPage(user, Math.max(1, Math.min(limit, MAX_PAGE_SIZE)), beforeTime, beforeChatId);
+        }
+
+        // chat list is assembled from two projection queries, so statement count does not depend on count of chats
+        List<UniversalChatWrap> dialogs = toDialogWraps(userService.getDialogListRows(user), true);
+        List<UniversalChatWrap> groupChats = toGroupChatWraps(groupChatService.getGroupChatListRows(user), true);
+
+        // lists are sorted by stored time, buffered times could move some chats up, stable sort keeps id order on equal time
+        Comparator<UniversalChatWrap> byActivity = Comparator.comparingLong(chat -> -chat.getLastActivityTime());
+        dialogs.sort(byActivity);
+        groupChats.sort(byActivity);
+
+        // dialogs go first on equal time
+        List<UniversalChatWrap> result = new ArrayList<>(dialogs.size() + groupChats.size());
+        int dialogIndex = 0, groupChatIndex = 0;
+        while (dialogIndex < dialogs.size() || groupChatIndex < groupChats.size()) {
+            if (groupChatIndex == groupChats.size() || (dialogIndex < dialogs.size()
+                    && dialogs.get(dialogIndex).getLastActivityTime() >= groupChats.get(groupChatIndex).getLastActivityTime())) {
+                result.add(dialogs.get(dialogIndex++));
+            } else {
+                result.add(groupChats.get(groupChatIndex++));
+            }
+        }
+        return result;
+    }
+
+    // page is ordered in the database, then its dialogs and group chats are loaded by ids, three queries at any depth
+    // (see UserRepository.findChatPageKeys for rows, that the group chat branch reads),
+    // pages report stored times, that the keyset query compares, so the cursor of the last chat continues exactly after it,
+    // a recently active chat shows its new time, once the buffer writes it, reading a page never waits for the buffer
+    private List<UniversalChatWrap> listChatPage(ChatUser user, int limit, Long beforeTime, String beforeChatId) {
+        long time = Long.MAX_VALUE;
+        long dialogId = Long.MAX_VALUE;
+        long groupChatId = Long.MAX_VALUE;
+        if (beforeTime != null || beforeChatId != null) {
+            ChatId cursor = new ChatId(beforeChatId);
+            if (beforeTime == null || !cursor.isValid()) {
+                return Collections.emptyList();
+            }
+            time = beforeTime;
+            // after a group chat only dialogs with older time remain, after a dialog all group chats with the same time remain
+            dialogId = cursor.isGroupChat() ? Long.MIN_VALUE : cursor.getId();
+            groupChatId = cursor.isGroupChat() ? cursor.getId() : Long.MAX_VALUE;
+        }
+        List<String> pageChatIds = new ArrayList<>();
+        List<Long> dialogIds = new ArrayList<>();
+        List<Long> groupChatIds = new ArrayList<>();
+        for (Object[] key : userService.getChatPageKeys(user, time, dialogId, groupChatId, limit)) {
+            long id = ((Number) key[1]).longValue();
+            boolean isDialog = ((Number) key[0]).intValue() == 1;
+            (isDialog ? dialogIds : groupChatIds).add(id);
+            pageChatIds.add(isDialog ? ChatId.ofDialog(id) : ChatId.ofGroupChat(id));
+        }
+
+        Map<String, UniversalChatWrap> chats = new HashMap<>();
+        if (!dialogIds.isEmpty()) {
+            toDialogWraps(userService.getDialogListRows(user, dialogIds), false).forEach(chat -> chats.put(chat.getChatId(), chat));
+        }
+        if (!groupChatIds.isEmpty()) {
+            toGroupChatWraps(groupChatService.getGroupChatListRows(user, groupChatIds), false).forEach(chat -> chats.put(chat.getChatId(), chat));
+        }
+        // chat could be removed between the queries
+        return pageChatIds.stream().map(chats::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 
     @GetMapping(path = "/get", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -171,18 +303,18 @@ public class ChatController {
 
     private class ChatMemberInfo {
         public final String targetUid;
-        public final ChatUser chatUser;
+        public final UserSummary chatUser;
         public final boolean isCreator;
 
         public ChatMemberInfo(String targetUid, boolean isCreator) {
             this.targetUid = targetUid;
-            this.chatUser = userService.getByUid(targetUid);
+            this.chatUser = userResolver.resolve(targetUid);
             this.isCreator = isCreator;
         }
 
         public ChatMemberInfo(ChatUser user, boolean isCreator) {
             this.targetUid = user.getUid();
-            this.chatUser = user;
+            this.chatUser = UserSummary.of(user);
             this.isCreator = isCreator;
         }
     }
@@ -217,6 +349,7 @@ public class ChatController {
         return Collections.emptyList();
     }
 
+    // only membership is checked, group chat members are cached, time is buffered and written in batches, see ChatActivityBuffer
     @PostMapping(path = "/update_last_activity", produces = MediaType.APPLICATION_JSON_VALUE)
     public Map<String, Object> updateLastActivity(@AuthenticationPrincipal ChatUser user, @RequestBody Map<String, String> payload) {
         ChatId chatId = new ChatId(payload.get("chatId"));
@@ -224,28 +357,10 @@ public class ChatController {
             return Collections.singletonMap("success", false);
         }
 
-        user = userService.fetch(user);
-        boolean success = false;
-
-        switch (chatId.getType()) {
-            case DIALOG -> {
-                Dialog dialog = user.getDialog(chatId.getId());
-                if (dialog != null) {
-                    dialog.updateLastActivityTime();
-                    userService.save(user);
-                    success = true;
-                }
-            }
-            case GROUP_CHAT -> {
-                GroupChat groupChat = user.getGroupChat(chatId.getId());
-                if (groupChat != null) {
-                    groupChat.updateLastActivityTime();
-                    groupChatService.save(groupChat);
-                    success = true;
-                }
-            }
-        }
-
+        boolean success = switch (chatId.getType()) {
+            case DIALOG -> dialogService.updateLastActivity(user, chatId.getId());
+            case GROUP_CHAT -> groupChatService.updateLastActivity(user, chatId.getId(), groupMemberCache.getMemberUids(chatId.getId()));
+        };
         return Collections.singletonMap("success", success);
     }
 
@@ -338,8 +453,7 @@ public class ChatController {
             return Collections.singletonMap("success", false);
         }
 
-        chat.setName(newChatName);
-        groupChatService.save(chat);
+        groupChatService.renameGroupChat(chat, newChatName);
         return Collections.singletonMap("success", true);
     }
 
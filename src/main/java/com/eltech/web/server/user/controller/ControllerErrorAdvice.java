@@ -0,0 +1,58 @@
+package com.eltech.web.server.user.controller;
+
+import com.eltech.web.server.log.EventLog;
+import org.springframework.beans.TypeMismatchException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.server.ResponseStatusException;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Reports errors, thrown from controllers, to the event log, instead of printing a stack trace per request,
+ * client receives a short json error. Malformed requests and exceptions, that carry their own status,
+ * are client errors, they keep their status and are logged without a stack trace
+ */
+@RestControllerAdvice
+public class ControllerErrorAdvice {
+    private final EventLog eventLog;
+
+    public ControllerErrorAdvice(EventLog eventLog) {
+        this.eventLog = eventLog;
+    }
+
+    @ExceptionHandler(AuthenticationException.class)
+    public ResponseEntity<Map<String, Object>> handleAuthenticationError(AuthenticationException e, HttpServletRequest request) {
+        eventLog.warn("rest.authentication_failed", e.getMessage(), "path", request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Collections.singletonMap("success", false));
+    }
+
+    // unreadable body or a parameter of wrong type, like limit=abc
+    @ExceptionHandler({ HttpMessageNotReadableException.class, TypeMismatchException.class })
+    public ResponseEntity<Map<String, Object>> handleBadRequest(RuntimeException e, HttpServletRequest request) {
+        eventLog.warn("rest.bad_request", e.getMessage(), "path", request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("success", false));
+    }
+
+    @ExceptionHandler(ResponseStatusException.class)
+    public ResponseEntity<Map<String, Object>> handleStatusError(ResponseStatusException e, HttpServletRequest request) {
+        if (e.getStatus().is5xxServerError()) {
+            eventLog.error("rest.request_failed", e.getMessage(), e, "path", request.getRequestURI());
+        } else {
+            eventLog.warn("rest.request_rejected", e.getMessage(), "path", request.getRequestURI(), "status", e.getRawStatusCode());
+        }
+        return ResponseEntity.status(e.getStatus()).headers(e.getResponseHeaders()).body(Collections.singletonMap("success", false));
+    }
+
+    @ExceptionHandler(RuntimeException.class)
+    public ResponseEntity<Map<String, Object>> handleError(RuntimeException e, HttpServletRequest request) {
+        eventLog.error("rest.request_failed", "request failed with unhandled exception", e, "path", request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(Collections.singletonMap("success", false));
+    }
+}
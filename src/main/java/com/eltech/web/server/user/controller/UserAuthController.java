@@ -1,5 +1,6 @@
 package com.eltech.web.server.user.controller;
 
+import com.eltech.web.server.log.EventLog;
 import com.eltech.web.server.user.entity.ChatUser;
 import com.eltech.web.server.user.service.UserService;
 import org.springframework.http.MediaType;
@@ -29,11 +30,13 @@ public class UserAuthController {
     private final UserService userService;
     private final AuthenticationManager authManager;
     private final PasswordEncoder passwordEncoder;
+    private final EventLog eventLog;
 
-    public UserAuthController(UserService userService, AuthenticationManager authManager, PasswordEncoder passwordEncoder) {
+    public UserAuthController(UserService userService, AuthenticationManager authManager, PasswordEncoder passwordEncoder, EventLog eventLog) {
         this.userService = userService;
         this.authManager = authManager;
         this.passwordEncoder = passwordEncoder;
+        this.eventLog = eventLog;
     }
 
     private static class UserCredentials {
@@ -88,6 +91,7 @@ public class UserAuthController {
 
             ChatUser user = userService.getByUsername(credentials.getUsername());
             if (user == null || !passwordEncoder.matches(credentials.getPassword(), user.getPassword())) {
+                eventLog.warn("auth.login_failed", "wrong username or password", "remoteAddress", request.getRemoteAddr());
                 return new SuccessOrErrorResult(false, "Неправильное имя пользователя или пароль");
             }
 
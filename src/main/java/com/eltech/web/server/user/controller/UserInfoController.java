@@ -1,7 +1,7 @@
 package com.eltech.web.server.user.controller;
 
 
-import com.eltech.web.server.user.entity.ChatUser;
+import com.eltech.web.server.user.service.UserResolver;
 import com.eltech.web.server.user.service.UserService;
 import org.springframework.http.MediaType;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -9,19 +9,35 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 @RestController
 @RequestMapping(path="/api/user")
 public class UserInfoController {
+    private static final int MAX_UIDS_PER_REQUEST = 1000;
+
     private final UserService userService;
 
-    public UserInfoController(UserService userService) {
+    private final UserResolver userResolver;
+
+    public UserInfoController(UserService userService, UserResolver userResolver) {
         this.userService = userService;
+        this.userResolver = userResolver;
     }
 
     @GetMapping(path = "/get", produces = MediaType.APPLICATION_JSON_VALUE)
     public @ResponseBody Map<String, Object> getCurrentUser(@RequestParam String uid) {
-        return Collections.singletonMap("user", userService.getByUid(uid));
+        return Collections.singletonMap("user", userService.getSummaryByUid(uid));
+    }
+
+    // users by uid for a whole contact list in one round trip, unknown uids are mapped to null
+    @PostMapping(path = "/get_many", produces = MediaType.APPLICATION_JSON_VALUE)
+    public @ResponseBody Map<String, Object> getUsers(@RequestBody Map<String, List<String>> payload) {
+        List<String> uids = payload.get("uids");
+        if (uids == null || uids.size() > MAX_UIDS_PER_REQUEST) {
+            return Collections.singletonMap("users", null);
+        }
+        return Collections.singletonMap("users", userResolver.resolveAll(uids));
     }
 }
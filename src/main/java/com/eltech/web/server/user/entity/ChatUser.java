@@ -11,6 +11,8 @@ import java.util.HashSet;
 import java.util.List;
 
 @Entity
+// users are looked up by uid on every socket handshake and chat list page
+@Table(indexes = { @Index(name = "chat_user_uid_idx", columnList = "uid") })
 public class ChatUser implements UserDetails {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -27,7 +29,8 @@ public class ChatUser implements UserDetails {
     @JoinTable(
             name = "group_chat_users",
             joinColumns = { @JoinColumn(name = "user_id") },
-            inverseJoinColumns = { @JoinColumn(name = "chat_id") }
+            inverseJoinColumns = { @JoinColumn(name = "chat_id") },
+            indexes = { @Index(name = "group_chat_users_user_idx", columnList = "user_id, chat_id") }
     )
     private List<GroupChat> groupChats = new ArrayList<>();
 
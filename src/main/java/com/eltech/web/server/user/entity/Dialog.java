@@ -6,6 +6,8 @@ import javax.persistence.*;
 import java.util.function.Function;
 
 @Entity
+// keyset pages of the chat list are read from this index
+@Table(indexes = { @Index(name = "dialog_user_activity_idx", columnList = "user_id, lastActivityTime, id") })
 public class Dialog {
     @Id
     @GeneratedValue(strategy = GenerationType.AUTO)
@@ -16,6 +18,8 @@ public class Dialog {
     private ChatUser user;
 
     // time of last activity to sort dialogs
+    // written only by ChatActivityBuffer, so a save of a stale entity never moves it back
+    @Column(updatable = false)
     private long lastActivityTime;
 
     // for peer-to-peer chat target is just uid
@@ -12,6 +12,8 @@ public class GroupChat {
     @GeneratedValue(strategy = GenerationType.AUTO)
     private Long id;
 
+    // written only by ChatActivityBuffer, so a save of a stale entity never moves it back
+    @Column(updatable = false)
     private long lastActivityTime;
 
     private String name;
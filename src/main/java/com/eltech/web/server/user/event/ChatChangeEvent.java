@@ -0,0 +1,86 @@
+package com.eltech.web.server.user.event;
+
+import com.eltech.web.server.user.controller.ChatController;
+import com.eltech.web.server.user.entity.ChatUser;
+import com.eltech.web.server.user.entity.Dialog;
+import com.eltech.web.server.user.entity.GroupChat;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Change of a chat, that should be seen in chat lists of its recipients
+ */
+public class ChatChangeEvent {
+    public enum Kind {
+        CHAT_ADDED,
+        CHAT_RENAMED,
+        MEMBER_JOINED,
+        MEMBER_LEFT,
+        CHAT_REMOVED,
+        LAST_ACTIVITY_CHANGED
+    }
+
+    private final Kind kind;
+    private final String chatId;
+    private final Set<String> recipientUids;
+    private final String chatName;
+    private final String memberUid;
+    private final long lastActivityTime;
+
+    private ChatChangeEvent(Kind kind, String chatId, Collection<String> recipientUids, String chatName, String memberUid, long lastActivityTime) {
+        this.kind = kind;
+        this.chatId = chatId;
+        this.recipientUids = Collections.unmodifiableSet(new HashSet<>(recipientUids));
+        this.chatName = chatName;
+        this.memberUid = memberUid;
+        this.lastActivityTime = lastActivityTime;
+    }
+
+    // dialog is visible only to its owner, so only owner devices receive its changes
+    public static ChatChangeEvent ofDialog(Kind kind, Dialog dialog) {
+        ChatUser owner = dialog.getUser();
+        return new ChatChangeEvent(kind, ChatController.ChatId.ofDialog(dialog.getId()), Collections.singleton(owner.getUid()),
+                null, owner.getUid(), dialog.getLastActivityTime());
+    }
+
+    public static ChatChangeEvent ofDialog(Kind kind, long dialogId, String ownerUid, long lastActivityTime) {
+        return new ChatChangeEvent(kind, ChatController.ChatId.ofDialog(dialogId), Collections.singleton(ownerUid), null, ownerUid, lastActivityTime);
+    }
+
+    public static ChatChangeEvent ofGroupChat(Kind kind, long chatId, String chatName, Collection<String> memberUids, long lastActivityTime) {
+        return new ChatChangeEvent(kind, ChatController.ChatId.ofGroupChat(chatId), memberUids, chatName, null, lastActivityTime);
+    }
+
+    // recipients are passed by caller, so publishing never initializes the lazy member collection of the chat
+    public static ChatChangeEvent ofGroupChat(Kind kind, GroupChat chat, ChatUser member, Collection<String> recipientUids) {
+        return new ChatChangeEvent(kind, ChatController.ChatId.ofGroupChat(chat.getId()), recipientUids,
+                chat.getName(), member != null ? member.getUid() : null, chat.getLastActivityTime());
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getChatId() {
+        return chatId;
+    }
+
+    public Set<String> getRecipientUids() {
+        return recipientUids;
+    }
+
+    public String getChatName() {
+        return chatName;
+    }
+
+    public String getMemberUid() {
+        return memberUid;
+    }
+
+    public long getLastActivityTime() {
+        return lastActivityTime;
+    }
+}
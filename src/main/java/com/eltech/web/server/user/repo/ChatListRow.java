@@ -0,0 +1,35 @@
+package com.eltech.web.server.user.repo;
+
+/**
+ * Projection of a chat list query, group chats produce a row per member other than the requesting user,
+ * dialogs produce a single row with title of the target user (null, if target user does not exist)
+ */
+public class ChatListRow {
+    private final long chatId;
+    private final String title;
+    private final long lastActivityTime;
+    private final String targetUid;
+
+    public ChatListRow(long chatId, String title, long lastActivityTime, String targetUid) {
+        this.chatId = chatId;
+        this.title = title;
+        this.lastActivityTime = lastActivityTime;
+        this.targetUid = targetUid;
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public long getLastActivityTime() {
+        return lastActivityTime;
+    }
+
+    public String getTargetUid() {
+        return targetUid;
+    }
+}
@@ -1,8 +1,27 @@
 package com.eltech.web.server.user.repo;
 
 import com.eltech.web.server.user.entity.GroupChat;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
 
 public interface GroupChatRepository extends CrudRepository<GroupChat, Long> {
     GroupChat findGroupChatByInviteUid(String inviteUid);
+
+    @Query("select u.uid from GroupChat g join g.users u where g.id = :chatId")
+    List<String> findMemberUids(@Param("chatId") long chatId);
+
+    // group chats of the user with a row per other member, rows of the same chat are adjacent, most recently active chat first
+    @Query("select new com.eltech.web.server.user.repo.ChatListRow(g.id, g.name, g.lastActivityTime, m.uid) " +
+            "from ChatUser u join u.groupChats g left join g.users m on m.id <> u.id " +
+            "where u.id = :userId order by g.lastActivityTime desc, g.id desc")
+    List<ChatListRow> findGroupChatListRows(@Param("userId") long userId);
+
+    @Query("select new com.eltech.web.server.user.repo.ChatListRow(g.id, g.name, g.lastActivityTime, m.uid) " +
+            "from ChatUser u join u.groupChats g left join g.users m on m.id <> u.id " +
+            "where u.id = :userId and g.id in :ids order by g.id")
+    List<ChatListRow> findGroupChatListRowsByIds(@Param("userId") long userId, @Param("ids") Collection<Long> ids);
 }
@@ -1,14 +1,68 @@
 package com.eltech.web.server.user.repo;
 
 import com.eltech.web.server.user.entity.ChatUser;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
+import java.util.List;
 
 @Repository
 public interface UserRepository extends CrudRepository<ChatUser, Long> {
     ChatUser findByUsername(String username);
 
     ChatUser findByUid(String uid);
+
+    List<ChatUser> findByUidIn(Collection<String> uids);
+
+    // current uid of the user, without loading the entity
+    @Query("select u.uid from ChatUser u where u.id = :id")
+    String findUidById(@Param("id") long id);
+
+    @Query("select d.target from Dialog d where d.user.uid = :uid")
+    List<String> findDialogTargetUids(@Param("uid") String uid);
+
+    @Query("select d.user.uid from Dialog d where d.target = :uid")
+    List<String> findDialogOwnerUidsByTarget(@Param("uid") String uid);
+
+    @Query("select distinct m.uid from ChatUser u join u.groupChats g join g.users m where u.uid = :uid and m.uid <> :uid")
+    List<String> findGroupChatMemberUids(@Param("uid") String uid);
+
+    // uid of the owner, if dialog belongs to the user, otherwise null
+    @Query("select d.user.uid from Dialog d where d.id = :dialogId and d.user.id = :userId")
+    String findDialogOwnerUid(@Param("userId") long userId, @Param("dialogId") long dialogId);
+
+    // dialogs of the user with target usernames, most recently active first
+    @Query("select new com.eltech.web.server.user.repo.ChatListRow(d.id, t.username, d.lastActivityTime, d.target) " +
+            "from Dialog d left join ChatUser t on t.uid = d.target " +
+            "where d.user.id = :userId order by d.lastActivityTime desc, d.id desc")
+    List<ChatListRow> findDialogListRows(@Param("userId") long userId);
+
+    @Query("select new com.eltech.web.server.user.repo.ChatListRow(d.id, t.username, d.lastActivityTime, d.target) " +
+            "from Dialog d left join ChatUser t on t.uid = d.target " +
+            "where d.user.id = :userId and d.id in :ids")
+    List<ChatListRow> findDialogListRowsByIds(@Param("userId") long userId, @Param("ids") Collection<Long> ids);
+
+    /**
+     * Keyset page of dialogs and group chats of the user, merged in the database by last activity time desc,
+     * then dialogs before group chats, then id desc. The dialog branch reads at most limit rows after its cursor
+     * from the (user_id, last_activity_time, id) index, so its cost does not depend on depth. The group chat branch
+     * orders by time of the chat, that is not kept on the membership row, so it reads and sorts all memberships
+     * of the user on every page, its cost grows with count of group chats of the user, not with depth of the page.
+     * @return rows of [kind (1 for dialog, 0 for group chat), chat id]
+     */
+    @Query(value = "select c.kind, c.id from (" +
+            "(select 1 as kind, d.id, d.last_activity_time from dialog d " +
+            "where d.user_id = :userId and (d.last_activity_time, d.id) < (:time, :dialogId) " +
+            "order by d.last_activity_time desc, d.id desc limit :limit) " +
+            "union all " +
+            "(select 0 as kind, g.id, g.last_activity_time from group_chat_users m join group_chat g on g.id = m.chat_id " +
+            "where m.user_id = :userId and (g.last_activity_time, g.id) < (:time, :groupChatId) " +
+            "order by g.last_activity_time desc, g.id desc limit :limit)" +
+            ") c order by c.last_activity_time desc, c.kind desc, c.id desc limit :limit", nativeQuery = true)
+    List<Object[]> findChatPageKeys(@Param("userId") long userId, @Param("time") long time,
+                                    @Param("dialogId") long dialogId, @Param("groupChatId") long groupChatId, @Param("limit") int limit);
 }
@@ -0,0 +1,123 @@
+package com.eltech.web.server.user.service;
+
+import com.eltech.web.server.log.EventLog;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind buffer of chat last activity times. Only the latest time of each chat is kept,
+ * buffered times are written with a single batched update per table at fixed interval and on shutdown.
+ * Updates never move time backwards, so a concurrent save of an older entity state is not overwritten by an older buffered time.
+ * Reads should pass times, loaded from the database, through getDialogActivityTime / getGroupChatActivityTime.
+ */
+@Component
+public class ChatActivityBuffer {
+    private static final String UPDATE_DIALOG = "update dialog set last_activity_time = ? where id = ? and last_activity_time < ?";
+    private static final String UPDATE_GROUP_CHAT = "update group_chat set last_activity_time = ? where id = ? and last_activity_time < ?";
+
+    private final ChatActivityProperties settings;
+    private final JdbcTemplate jdbcTemplate;
+    private final EventLog eventLog;
+
+    // chat id -> latest activity time, that is not written yet
+    private final Map<Long, Long> dialogTimes = new ConcurrentHashMap<>();
+    private final Map<Long, Long> groupChatTimes = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    public ChatActivityBuffer(ChatActivityProperties settings, JdbcTemplate jdbcTemplate, EventLog eventLog) {
+        this.settings = settings;
+        this.jdbcTemplate = jdbcTemplate;
+        this.eventLog = eventLog;
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "chat-activity-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (settings.isEnabled()) {
+            scheduler.scheduleWithFixedDelay(this::flush, settings.getFlushIntervalMs(), settings.getFlushIntervalMs(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public void recordDialog(long dialogId, long time) {
+        record(dialogTimes, UPDATE_DIALOG, dialogId, time);
+    }
+
+    public void recordGroupChat(long chatId, long time) {
+        record(groupChatTimes, UPDATE_GROUP_CHAT, chatId, time);
+    }
+
+    private void record(Map<Long, Long> times, String update, long id, long time) {
+        if (!settings.isEnabled()) {
+            jdbcTemplate.update(update, time, id, time);
+            return;
+        }
+        times.merge(id, time, Math::max);
+    }
+
+    /**
+     * @return buffered time of the dialog, if it is newer than given one, loaded from the database
+     */
+    public long getDialogActivityTime(long dialogId, long storedTime) {
+        Long time = dialogTimes.get(dialogId);
+        return time != null ? Math.max(time, storedTime) : storedTime;
+    }
+
+    public long getGroupChatActivityTime(long chatId, long storedTime) {
+        Long time = groupChatTimes.get(chatId);
+        return time != null ? Math.max(time, storedTime) : storedTime;
+    }
+
+    public int getBufferedCount() {
+        return dialogTimes.size() + groupChatTimes.size();
+    }
+
+    /**
+     * Writes all buffered times, called on interval and on shutdown
+     */
+    public synchronized void flush() {
+        try {
+            write(dialogTimes, UPDATE_DIALOG);
+            write(groupChatTimes, UPDATE_GROUP_CHAT);
+        } catch (RuntimeException e) {
+            // times stay buffered and are written on the next flush
+            eventLog.error("chat.activity_flush_failed", "failed to write chat activity times", e, "buffered", getBufferedCount());
+        }
+    }
+
+    private void write(Map<Long, Long> times, String update) {
+        if (times.isEmpty()) {
+            return;
+        }
+        List<Object[]> batch = new ArrayList<>(times.size());
+        for (Map.Entry<Long, Long> entry : times.entrySet()) {
+            batch.add(new Object[] { entry.getValue(), entry.getKey(), entry.getValue() });
+        }
+        jdbcTemplate.batchUpdate(update, batch);
+        // time, recorded during the write, stays buffered till the next flush
+        for (Object[] args : batch) {
+            times.remove((Long) args[1], (Long) args[0]);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,29 @@
+package com.eltech.web.server.user.service;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "chat-activity")
+public class ChatActivityProperties {
+    // when disabled, every activity update is written to the database right away
+    private boolean enabled = true;
+    // interval, buffered activity times are written to the database
+    private long flushIntervalMs = 1000;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getFlushIntervalMs() {
+        return flushIntervalMs;
+    }
+
+    public void setFlushIntervalMs(long flushIntervalMs) {
+        this.flushIntervalMs = flushIntervalMs;
+    }
+}
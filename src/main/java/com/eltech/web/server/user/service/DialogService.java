@@ -2,7 +2,9 @@ package com.eltech.web.server.user.service;
 
 import com.eltech.web.server.user.entity.ChatUser;
 import com.eltech.web.server.user.entity.Dialog;
+import com.eltech.web.server.user.event.ChatChangeEvent;
 import com.eltech.web.server.user.repo.UserRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
@@ -11,9 +13,13 @@ import java.util.Objects;
 @Service
 public class DialogService {
     private final UserService userService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChatActivityBuffer activityBuffer;
 
-    public DialogService(UserService userService) {
+    public DialogService(UserService userService, ApplicationEventPublisher eventPublisher, ChatActivityBuffer activityBuffer) {
         this.userService = userService;
+        this.eventPublisher = eventPublisher;
+        this.activityBuffer = activityBuffer;
     }
 
     public Dialog getDialog(ChatUser user, String target) {
@@ -33,8 +39,7 @@ public class DialogService {
         // if dialog already exists, just update and return it
         Dialog dialog = getDialog(user, target);
         if (dialog != null) {
-            dialog.updateLastActivityTime();
-            userService.save(user);
+            updateLastActivity(user, dialog);
             return dialog;
         }
 
@@ -45,7 +50,33 @@ public class DialogService {
         user = userService.saveAndFetch(user);
 
         // dialog is added, return it
-        return getDialog(user, target);
+        dialog = getDialog(user, target);
+        if (dialog != null) {
+            eventPublisher.publishEvent(ChatChangeEvent.ofDialog(ChatChangeEvent.Kind.CHAT_ADDED, dialog));
+        }
+        return dialog;
+    }
+
+    // time is written by activity buffer, user is not saved
+    public void updateLastActivity(ChatUser user, Dialog dialog) {
+        dialog.updateLastActivityTime();
+        activityBuffer.recordDialog(dialog.getId(), dialog.getLastActivityTime());
+        eventPublisher.publishEvent(ChatChangeEvent.ofDialog(ChatChangeEvent.Kind.LAST_ACTIVITY_CHANGED, dialog));
+    }
+
+    /**
+     * Updates last activity without loading the user and its dialogs
+     * @return false, if dialog does not belong to the user
+     */
+    public boolean updateLastActivity(ChatUser user, long dialogId) {
+        String ownerUid = userService.getDialogOwnerUid(user, dialogId);
+        if (ownerUid == null) {
+            return false;
+        }
+        long time = System.currentTimeMillis();
+        activityBuffer.recordDialog(dialogId, time);
+        eventPublisher.publishEvent(ChatChangeEvent.ofDialog(ChatChangeEvent.Kind.LAST_ACTIVITY_CHANGED, dialogId, ownerUid, time));
+        return true;
     }
 
     public boolean removeDialog(ChatUser user, Dialog dialog) {
@@ -53,6 +84,7 @@ public class DialogService {
         if (result) {
             user.setDialogs(user.getDialogs());
             userService.save(user);
+            eventPublisher.publishEvent(ChatChangeEvent.ofDialog(ChatChangeEvent.Kind.CHAT_REMOVED, dialog));
         }
         return result;
     }
@@ -2,24 +2,47 @@ package com.eltech.web.server.user.service;
 
 import com.eltech.web.server.user.entity.ChatUser;
 import com.eltech.web.server.user.entity.GroupChat;
+import com.eltech.web.server.user.event.ChatChangeEvent;
+import com.eltech.web.server.user.repo.ChatListRow;
 import com.eltech.web.server.user.repo.GroupChatRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 
 @Service
 public class GroupChatService {
     private final GroupChatRepository groupChatRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ChatActivityBuffer activityBuffer;
 
-    public GroupChatService(GroupChatRepository groupChatRepository) {
+    public GroupChatService(GroupChatRepository groupChatRepository, ApplicationEventPublisher eventPublisher, ChatActivityBuffer activityBuffer) {
         this.groupChatRepository = groupChatRepository;
+        this.eventPublisher = eventPublisher;
+        this.activityBuffer = activityBuffer;
     }
 
     public GroupChat getById(long id) {
         return groupChatRepository.findById(id).orElse(null);
     }
 
+    public List<String> getMemberUids(long id) {
+        return groupChatRepository.findMemberUids(id);
+    }
+
+    public List<ChatListRow> getGroupChatListRows(ChatUser user) {
+        return groupChatRepository.findGroupChatListRows(user.getId());
+    }
+
+    public List<ChatListRow> getGroupChatListRows(ChatUser user, Collection<Long> chatIds) {
+        return groupChatRepository.findGroupChatListRowsByIds(user.getId(), chatIds);
+    }
+
     public GroupChat fetch(GroupChat chat) {
         if (chat == null) {
             return null;
@@ -45,7 +68,9 @@ public class GroupChatService {
         String inviteId = groupChat.generateNewInviteId();
         groupChat.getUsers().add(user);
         save(groupChat);
-        return groupChatRepository.findGroupChatByInviteUid(inviteId);
+        groupChat = groupChatRepository.findGroupChatByInviteUid(inviteId);
+        eventPublisher.publishEvent(ChatChangeEvent.ofGroupChat(ChatChangeEvent.Kind.CHAT_ADDED, groupChat, user, getMemberUids(groupChat.getId())));
+        return groupChat;
     }
 
     @Transactional
@@ -57,7 +82,9 @@ public class GroupChatService {
 
         if (chat.addUser(user)) {
             chat.updateLastActivityTime();
-            return saveAndFetch(chat);
+            activityBuffer.recordGroupChat(chat.getId(), chat.getLastActivityTime());
+            chat = saveAndFetch(chat);
+            eventPublisher.publishEvent(ChatChangeEvent.ofGroupChat(ChatChangeEvent.Kind.MEMBER_JOINED, chat, user, getMemberUids(chat.getId())));
         }
         return chat;
     }
@@ -72,10 +99,37 @@ public class GroupChatService {
                 groupChatRepository.delete(chat);
             } else {
                 chat.updateLastActivityTime();
+                activityBuffer.recordGroupChat(chat.getId(), chat.getLastActivityTime());
                 save(chat);
             }
+            // member, that left, also has to remove the chat from its chat list
+            Set<String> recipientUids = new HashSet<>(getMemberUids(chat.getId()));
+            recipientUids.add(user.getUid());
+            eventPublisher.publishEvent(ChatChangeEvent.ofGroupChat(ChatChangeEvent.Kind.MEMBER_LEFT, chat, user, recipientUids));
             return true;
         }
         return false;
     }
+
+    public void renameGroupChat(GroupChat chat, String name) {
+        chat.setName(name);
+        save(chat);
+        eventPublisher.publishEvent(ChatChangeEvent.ofGroupChat(ChatChangeEvent.Kind.CHAT_RENAMED, chat, null, getMemberUids(chat.getId())));
+    }
+
+    /**
+     * Updates last activity without querying the database, time is written by activity buffer
+     * @param memberUids current members of the chat, as cached by GroupMemberCache
+     * @return false, if user is not a member of the chat
+     */
+    public boolean updateLastActivity(ChatUser user, long chatId, Set<String> memberUids) {
+        if (!memberUids.contains(user.getUid())) {
+            return false;
+        }
+        long time = System.currentTimeMillis();
+        activityBuffer.recordGroupChat(chatId, time);
+        // recipients already know the name of the chat
+        eventPublisher.publishEvent(ChatChangeEvent.ofGroupChat(ChatChangeEvent.Kind.LAST_ACTIVITY_CHANGED, chatId, null, memberUids, time));
+        return true;
+    }
 }
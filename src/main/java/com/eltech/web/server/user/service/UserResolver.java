@@ -0,0 +1,76 @@
+package com.eltech.web.server.user.service;
+
+import com.eltech.web.server.user.cache.UserSummary;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.annotation.RequestScope;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Request scoped identity map of users by uid. Uids, that will be needed, can be registered with request,
+ * the first resolve then loads all of them with a single query. Every uid is loaded at most once per request,
+ * missing users are remembered as well.
+ */
+@Component
+@RequestScope
+public class UserResolver {
+    private final UserService userService;
+
+    // null value means, that there is no user with this uid
+    private final Map<String, UserSummary> users = new HashMap<>();
+    private final Set<String> pendingUids = new LinkedHashSet<>();
+
+    public UserResolver(UserService userService) {
+        this.userService = userService;
+    }
+
+    public void request(Collection<String> uids) {
+        for (String uid : uids) {
+            if (uid != null && !users.containsKey(uid)) {
+                pendingUids.add(uid);
+            }
+        }
+    }
+
+    public UserSummary resolve(String uid) {
+        if (uid == null) {
+            return null;
+        }
+        if (!users.containsKey(uid)) {
+            pendingUids.add(uid);
+            loadPending();
+        }
+        return users.get(uid);
+    }
+
+    /**
+     * @return users by uid in order of given uids, uids without user are mapped to null
+     */
+    public Map<String, UserSummary> resolveAll(Collection<String> uids) {
+        request(uids);
+        loadPending();
+        Map<String, UserSummary> result = new LinkedHashMap<>();
+        for (String uid : uids) {
+            if (uid != null) {
+                result.put(uid, users.get(uid));
+            }
+        }
+        return result;
+    }
+
+    private void loadPending() {
+        if (pendingUids.isEmpty()) {
+            return;
+        }
+        Map<String, UserSummary> loaded = userService.getSummariesByUids(pendingUids);
+        for (String uid : pendingUids) {
+            users.put(uid, loaded.get(uid));
+        }
+        pendingUids.clear();
+    }
+}
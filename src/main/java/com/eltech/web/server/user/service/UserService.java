@@ -1,9 +1,14 @@
 package com.eltech.web.server.user.service;
 
+import com.eltech.web.server.user.cache.UserCache;
+import com.eltech.web.server.user.cache.UserSummary;
 import com.eltech.web.server.user.entity.ChatUser;
 import com.eltech.web.server.user.entity.GroupChat;
+import com.eltech.web.server.user.event.ChatChangeEvent;
+import com.eltech.web.server.user.repo.ChatListRow;
 import com.eltech.web.server.user.repo.GroupChatRepository;
 import com.eltech.web.server.user.repo.UserRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
@@ -12,7 +17,14 @@ import org.springframework.stereotype.Service;
 
 import javax.transaction.Transactional;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -20,11 +32,16 @@ public class UserService implements UserDetailsService {
     private final UserRepository repository;
     private final GroupChatRepository groupChatRepository;
     private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final UserCache userCache;
 
-    public UserService(UserRepository repository, GroupChatRepository groupChatRepository, PasswordEncoder passwordEncoder) {
+    public UserService(UserRepository repository, GroupChatRepository groupChatRepository, PasswordEncoder passwordEncoder,
+                       ApplicationEventPublisher eventPublisher, UserCache userCache) {
         this.repository = repository;
         this.groupChatRepository = groupChatRepository;
         this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
+        this.userCache = userCache;
     }
 
     public ChatUser fetch(ChatUser user) {
@@ -34,6 +51,14 @@ public class UserService implements UserDetailsService {
         return repository.findById(user.getId()).orElse(null);
     }
 
+    // current uid of the user, uid could be changed after the given instance was loaded, null if user does not exist
+    public String fetchUid(ChatUser user) {
+        if (user == null || user.getId() == null) {
+            return null;
+        }
+        return repository.findUidById(user.getId());
+    }
+
     public void save(ChatUser user) {
         if (user != null) {
             repository.save(user);
@@ -46,11 +71,66 @@ public class UserService implements UserDetailsService {
     }
 
     public ChatUser getByUid(String uid) {
-        return this.repository.findByUid(uid);
+        return userCache.loadByUid(uid, repository::findByUid);
+    }
+
+    // cached, use it, when user is only displayed
+    public UserSummary getSummaryByUid(String uid) {
+        return userCache.getByUid(uid, repository::findByUid);
+    }
+
+    /**
+     * Cached, missing users are loaded with a single query
+     * @return user summaries by uid, uids without user are absent
+     */
+    public Map<String, UserSummary> getSummariesByUids(Collection<String> uids) {
+        return userCache.getByUids(uids, repository::findByUidIn);
+    }
+
+    /**
+     * Loads users with a single query
+     * @return users by uid, uids without user are absent
+     */
+    public Map<String, ChatUser> getByUids(Collection<String> uids) {
+        if (uids.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, ChatUser> result = new HashMap<>();
+        for (ChatUser user : repository.findByUidIn(uids)) {
+            result.put(user.getUid(), user);
+        }
+        return result;
     }
 
     public ChatUser getByUsername(String login) {
-        return this.repository.findByUsername(login);
+        return userCache.loadByUsername(login, repository::findByUsername);
+    }
+
+    // uids of all users, that share a dialog (in any direction) or a group chat with given user
+    public Set<String> getContactUids(String uid) {
+        Set<String> result = new HashSet<>();
+        result.addAll(repository.findDialogTargetUids(uid));
+        result.addAll(repository.findDialogOwnerUidsByTarget(uid));
+        result.addAll(repository.findGroupChatMemberUids(uid));
+        result.remove(uid);
+        return result;
+    }
+
+    public List<ChatListRow> getDialogListRows(ChatUser user) {
+        return repository.findDialogListRows(user.getId());
+    }
+
+    public List<ChatListRow> getDialogListRows(ChatUser user, Collection<Long> dialogIds) {
+        return repository.findDialogListRowsByIds(user.getId(), dialogIds);
+    }
+
+    public String getDialogOwnerUid(ChatUser user, long dialogId) {
+        return repository.findDialogOwnerUid(user.getId(), dialogId);
+    }
+
+    // see UserRepository.findChatPageKeys
+    public List<Object[]> getChatPageKeys(ChatUser user, long time, long dialogId, long groupChatId, int limit) {
+        return repository.findChatPageKeys(user.getId(), time, dialogId, groupChatId, limit);
     }
 
     @Transactional
@@ -61,7 +141,9 @@ public class UserService implements UserDetailsService {
             return null;
         }
         save(user);
-        return getByUid(user.getUid());
+        // username could be cached as missing
+        userCache.invalidate(user.getUid(), user.getUsername());
+        return repository.findByUid(user.getUid());
     }
 
     @Transactional
@@ -70,6 +152,8 @@ public class UserService implements UserDetailsService {
         if (userByUsername != null) {
             return false;
         }
+        userCache.invalidate(user.getUid(), user.getUsername());
+        userCache.invalidate(null, username);
         user.setUsername(username);
         save(user);
         return true;
@@ -79,12 +163,15 @@ public class UserService implements UserDetailsService {
     public void changePassword(ChatUser user, String password) {
         user.setPassword(passwordEncoder.encode(password));
         save(user);
+        userCache.invalidate(user.getUid(), user.getUsername());
     }
 
     @Transactional
     public void generateNewUid(ChatUser user) {
+        userCache.invalidate(user.getUid(), user.getUsername());
         user.setUid(UUID.randomUUID().toString());
         save(user);
+        userCache.invalidate(user.getUid(), null);
     }
 
     @Transactional
@@ -94,8 +181,11 @@ public class UserService implements UserDetailsService {
             for (GroupChat groupChat : new ArrayList<>(user.getGroupChats())) {
                 groupChat.removeUser(user);
                 groupChatRepository.save(groupChat);
+                eventPublisher.publishEvent(ChatChangeEvent.ofGroupChat(ChatChangeEvent.Kind.MEMBER_LEFT, groupChat, user,
+                        groupChatRepository.findMemberUids(groupChat.getId())));
             }
             repository.delete(user);
+            userCache.invalidate(user.getUid(), user.getUsername());
             return true;
         }
         return false;
@@ -0,0 +1,121 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.log.EventLogProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CallPinRegistryTest {
+    private SignalingProperties properties;
+    private SessionDirectory sessionDirectory;
+    private EventLog eventLog;
+    private OutboundWriter outboundWriter;
+    private SessionReaper sessionReaper;
+    private CallPinRegistry callPinRegistry;
+
+    private PeerSession caller;
+    private PeerSession phone;
+    private PeerSession laptop;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SignalingProperties();
+        properties.getLifecycle().setTickMs(10);
+        properties.getLifecycle().setHeartbeatIntervalMs(0);
+        properties.getCallPinning().setIdleMs(200);
+        sessionDirectory = new SessionDirectory();
+        EventLogProperties eventLogProperties = new EventLogProperties();
+        eventLogProperties.setEnabled(false);
+        eventLog = new EventLog(eventLogProperties);
+        SignalingMetrics metrics = new SignalingMetrics();
+        outboundWriter = new OutboundWriter(properties, metrics);
+        sessionReaper = new SessionReaper(sessionDirectory, properties, metrics, eventLog);
+        callPinRegistry = new CallPinRegistry(sessionDirectory, sessionReaper, properties);
+
+        caller = connect("caller-session", "caller");
+        phone = connect("phone", "callee");
+        laptop = connect("laptop", "callee");
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionReaper.shutdown();
+        outboundWriter.shutdown();
+        eventLog.shutdown();
+    }
+
+    @Test
+    void answeringSessionIsPinned() {
+        callPinRegistry.onRelayed(caller, "callee", true);
+        assertEquals(2, callPinRegistry.selectTargets("caller", "callee", null, true).length);
+
+        // phone answers, further frames of the call go only to it
+        callPinRegistry.onRelayed(phone, "caller", false);
+        assertArrayEquals(new PeerSession[] { phone }, callPinRegistry.selectTargets("caller", "callee", null, false));
+        assertArrayEquals(new PeerSession[] { caller }, callPinRegistry.selectTargets("callee", "caller", null, false));
+    }
+
+    @Test
+    void newOfferRingsAllDevices() {
+        callPinRegistry.onRelayed(caller, "callee", true);
+        callPinRegistry.onRelayed(phone, "caller", false);
+
+        // next call after the first one
+        callPinRegistry.onRelayed(caller, "callee", true);
+        assertEquals(2, callPinRegistry.selectTargets("caller", "callee", null, true).length);
+        assertEquals(2, callPinRegistry.selectTargets("caller", "callee", null, false).length);
+
+        callPinRegistry.onRelayed(laptop, "caller", false);
+        assertArrayEquals(new PeerSession[] { laptop }, callPinRegistry.selectTargets("caller", "callee", null, false));
+    }
+
+    @Test
+    void closedSessionReleasesItsPins() {
+        callPinRegistry.onRelayed(caller, "callee", true);
+        callPinRegistry.onRelayed(phone, "caller", false);
+        assertEquals(2, callPinRegistry.getPinCount());
+
+        sessionDirectory.remove(phone.getSessionId());
+        assertEquals(1, callPinRegistry.getPinCount());
+        assertArrayEquals(new PeerSession[] { laptop }, callPinRegistry.selectTargets("caller", "callee", null, false));
+
+        sessionDirectory.remove(caller.getSessionId());
+        assertEquals(0, callPinRegistry.getPinCount());
+    }
+
+    @Test
+    void idlePinsArePurgedWhileSessionsStayConnected() throws InterruptedException {
+        callPinRegistry.onRelayed(phone, "caller", false);
+        assertEquals(1, callPinRegistry.getPinCount());
+        assertEquals(1, callPinRegistry.getPinnedSessionCount());
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (callPinRegistry.getPinCount() > 0 || callPinRegistry.getPinnedSessionCount() > 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "idle pin was not purged");
+            Thread.sleep(10);
+        }
+        assertEquals(2, callPinRegistry.selectTargets("caller", "callee", null, false).length);
+    }
+
+    @Test
+    void removedSenderIsNotPinned() {
+        sessionDirectory.remove(phone.getSessionId());
+        // frame of the session was being handled, while the session was closed
+        callPinRegistry.onRelayed(phone, "caller", false);
+        assertEquals(0, callPinRegistry.getPinCount());
+        assertEquals(0, callPinRegistry.getPinnedSessionCount());
+    }
+
+    private PeerSession connect(String sessionId, String uid) {
+        RecordingWebSocketSession session = new RecordingWebSocketSession(sessionId, uid);
+        AdmissionControl admissionControl = new AdmissionControl(sessionDirectory, properties);
+        sessionDirectory.addUninitialized(new PeerSession(session, outboundWriter.createQueue(session),
+                admissionControl.createSdpBucket(), admissionControl.createCandidateBucket()));
+        return sessionDirectory.initialize(sessionId, uid, 0);
+    }
+}
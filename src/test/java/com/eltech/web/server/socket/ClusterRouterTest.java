@@ -0,0 +1,165 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.log.EventLogProperties;
+import com.eltech.web.server.socket.cluster.ClusterTransport;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Routes frames between two nodes, that communicate through the in process transport
+ */
+class ClusterRouterTest {
+    private static final long AWAIT_MS = 5000;
+
+    // signaling components of a single node
+    private static class Node {
+        final SignalingProperties properties = new SignalingProperties();
+        final EventLog eventLog;
+        final SignalingMetrics metrics = new SignalingMetrics();
+        final SessionDirectory sessionDirectory = new SessionDirectory();
+        final OutboundWriter outboundWriter;
+        final SessionReaper sessionReaper;
+        final PendingFrameBuffer pendingFrameBuffer;
+        final ClusterRouter clusterRouter;
+
+        Node(String clusterName, String nodeId) {
+            properties.getLifecycle().setHeartbeatIntervalMs(0);
+            properties.getCluster().setEnabled(true);
+            properties.getCluster().setName(clusterName);
+            properties.getCluster().setNodeId(nodeId);
+
+            EventLogProperties eventLogProperties = new EventLogProperties();
+            eventLogProperties.setEnabled(false);
+            eventLog = new EventLog(eventLogProperties);
+            outboundWriter = new OutboundWriter(properties, metrics);
+            sessionReaper = new SessionReaper(sessionDirectory, properties, metrics, eventLog);
+            pendingFrameBuffer = new PendingFrameBuffer(sessionDirectory, sessionReaper, properties);
+            clusterRouter = new ClusterRouter(sessionDirectory, pendingFrameBuffer, metrics, properties, eventLog,
+                    new StaticListableBeanFactory().getBeanProvider(ClusterTransport.class));
+        }
+
+        RecordingWebSocketSession connect(String sessionId, String uid) {
+            RecordingWebSocketSession session = new RecordingWebSocketSession(sessionId, uid);
+            AdmissionControl admissionControl = new AdmissionControl(sessionDirectory, properties);
+            sessionDirectory.addUninitialized(new PeerSession(session, outboundWriter.createQueue(session),
+                    admissionControl.createSdpBucket(), admissionControl.createCandidateBucket()));
+            sessionDirectory.initialize(sessionId, uid, 0);
+            return session;
+        }
+
+        void shutdown() {
+            clusterRouter.shutdown();
+            sessionReaper.shutdown();
+            outboundWriter.shutdown();
+            eventLog.shutdown();
+        }
+    }
+
+    private Node first;
+    private Node second;
+
+    @BeforeEach
+    void setUp() {
+        // each test runs its own cluster
+        String clusterName = "test-" + UUID.randomUUID();
+        first = new Node(clusterName, "node-a");
+        second = new Node(clusterName, "node-b");
+        awaitUntil(() -> first.clusterRouter.getNodes().equals(Set.of("node-a", "node-b"))
+                && second.clusterRouter.getNodes().equals(Set.of("node-a", "node-b")));
+    }
+
+    @AfterEach
+    void tearDown() {
+        first.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    void framesAreRoutedToNodeOfTarget() {
+        // enough uids, that both nodes own some of them
+        List<RecordingWebSocketSession> sessions = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            sessions.add(second.connect("s" + i, "uid" + i));
+        }
+        awaitUntil(() -> first.clusterRouter.getOwnedUidCount() + second.clusterRouter.getOwnedUidCount() == 20);
+        assertTrue(first.clusterRouter.getOwnedUidCount() > 0);
+        assertTrue(second.clusterRouter.getOwnedUidCount() > 0);
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(first.clusterRouter.routeToAbsentUid("uid" + i, new TextMessage("sdp" + i), false));
+        }
+        for (int i = 0; i < 20; i++) {
+            awaitPayloads(sessions.get(i), "sdp" + i);
+        }
+    }
+
+    @Test
+    void framesForNotConnectedTargetAreDeliveredWhenItConnects() {
+        for (int i = 0; i < 10; i++) {
+            first.clusterRouter.routeToAbsentUid("uid" + i, new TextMessage("sdp" + i), false);
+        }
+        awaitUntil(() -> first.clusterRouter.getUnroutableCount() + second.clusterRouter.getUnroutableCount() == 10);
+        assertEquals(10, first.metrics.getAbsentTargetCount(SignalingMetrics.AbsentTargetRoute.FORWARDED));
+        assertEquals(0, first.metrics.getDropCount(SignalingMetrics.Drop.UNKNOWN_TARGET));
+
+        for (int i = 0; i < 10; i++) {
+            RecordingWebSocketSession session = second.connect("s" + i, "uid" + i);
+            awaitPayloads(session, "sdp" + i);
+        }
+    }
+
+    @Test
+    void lateOnlineEventDoesNotRegisterOfflineUid() throws InterruptedException {
+        second.connect("s1", "uid1");
+        awaitUntil(() -> first.clusterRouter.getOwnedUidCount() + second.clusterRouter.getOwnedUidCount() == 1);
+        second.sessionDirectory.remove("s1");
+        awaitUntil(() -> first.clusterRouter.getOwnedUidCount() + second.clusterRouter.getOwnedUidCount() == 0);
+
+        // thread, that initialized the session, reports it after the container thread has already removed it
+        second.clusterRouter.onUidOnline("uid1");
+        Thread.sleep(200);
+        assertEquals(0, first.clusterRouter.getOwnedUidCount() + second.clusterRouter.getOwnedUidCount());
+    }
+
+    @Test
+    void frameWithoutTargetIsRejected() {
+        assertFalse(first.clusterRouter.routeToAbsentUid(null, new TextMessage("sdp"), false));
+        assertEquals(1, first.metrics.getDropCount(SignalingMetrics.Drop.UNKNOWN_TARGET));
+    }
+
+    private static void awaitPayloads(RecordingWebSocketSession session, String... payloads) {
+        awaitUntil(() -> session.getSentMessages().size() >= payloads.length);
+        List<Object> sent = new ArrayList<>();
+        for (WebSocketMessage<?> message : session.getSentMessages()) {
+            sent.add(message.getPayload());
+        }
+        assertEquals(List.of((Object[]) payloads), sent);
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + AWAIT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition was not met in " + AWAIT_MS + " ms");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.log.EventLogProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DispatchLanesTest {
+    private EventLog eventLog;
+    private DispatchLanes dispatchLanes;
+
+    @BeforeEach
+    void setUp() {
+        SignalingProperties properties = new SignalingProperties();
+        properties.getDispatch().setLanes(1);
+        EventLogProperties eventLogProperties = new EventLogProperties();
+        eventLogProperties.setEnabled(false);
+        eventLog = new EventLog(eventLogProperties);
+        dispatchLanes = new DispatchLanes(properties, eventLog);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatchLanes.shutdown();
+        eventLog.shutdown();
+    }
+
+    @Test
+    void failingTaskDoesNotStopLane() throws InterruptedException {
+        Thread[] laneThreads = new Thread[2];
+        CountDownLatch done = new CountDownLatch(1);
+        assertTrue(dispatchLanes.dispatch("uid", () -> {
+            laneThreads[0] = Thread.currentThread();
+            throw new IllegalStateException("expected by test");
+        }));
+        assertTrue(dispatchLanes.dispatch("uid", () -> {
+            laneThreads[1] = Thread.currentThread();
+            done.countDown();
+        }));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(laneThreads[0], laneThreads[1]);
+        assertEquals(1, dispatchLanes.getFailedCount(0));
+        assertEquals(0, dispatchLanes.getQueueDepth(0));
+    }
+}
@@ -0,0 +1,101 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.log.EventLogProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PendingFrameBufferTest {
+    private static final long AWAIT_MS = 5000;
+
+    private SignalingProperties properties;
+    private EventLog eventLog;
+    private SessionDirectory sessionDirectory;
+    private OutboundWriter outboundWriter;
+    private SessionReaper sessionReaper;
+    private PendingFrameBuffer pendingFrameBuffer;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SignalingProperties();
+        properties.getLifecycle().setHeartbeatIntervalMs(0);
+        EventLogProperties eventLogProperties = new EventLogProperties();
+        eventLogProperties.setEnabled(false);
+        eventLog = new EventLog(eventLogProperties);
+        SignalingMetrics metrics = new SignalingMetrics();
+        sessionDirectory = new SessionDirectory();
+        outboundWriter = new OutboundWriter(properties, metrics);
+        sessionReaper = new SessionReaper(sessionDirectory, properties, metrics, eventLog);
+        pendingFrameBuffer = new PendingFrameBuffer(sessionDirectory, sessionReaper, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionReaper.shutdown();
+        outboundWriter.shutdown();
+        eventLog.shutdown();
+    }
+
+    @Test
+    void keptFramesAreDeliveredToEverySessionOfTarget() {
+        assertTrue(pendingFrameBuffer.add("callee", frame("sdp"), false));
+        assertTrue(pendingFrameBuffer.add("callee", frame("candidate1"), true));
+
+        RecordingWebSocketSession phone = connect("phone", "callee");
+        RecordingWebSocketSession laptop = connect("laptop", "callee");
+
+        awaitPayloads(phone, "sdp", "candidate1");
+        awaitPayloads(laptop, "sdp", "candidate1");
+        assertEquals(1.0, pendingFrameBuffer.getHitRate());
+    }
+
+    @Test
+    void framesForConnectedTargetFollowKeptFrames() {
+        pendingFrameBuffer.add("callee", frame("sdp"), false);
+        RecordingWebSocketSession phone = connect("phone", "callee");
+
+        // relay asks the buffer first, so candidate is appended after kept sdp
+        assertTrue(pendingFrameBuffer.addIfPending("callee", null, frame("candidate1"), true));
+        assertTrue(pendingFrameBuffer.addIfPending("callee", "laptop", frame("laptop-only"), true));
+        RecordingWebSocketSession laptop = connect("laptop", "callee");
+
+        awaitPayloads(phone, "sdp", "candidate1");
+        awaitPayloads(laptop, "sdp", "candidate1", "laptop-only");
+        assertFalse(pendingFrameBuffer.addIfPending("other", null, frame("sdp"), false));
+    }
+
+    private RecordingWebSocketSession connect(String sessionId, String uid) {
+        RecordingWebSocketSession session = new RecordingWebSocketSession(sessionId, uid);
+        AdmissionControl admissionControl = new AdmissionControl(sessionDirectory, properties);
+        sessionDirectory.addUninitialized(new PeerSession(session, outboundWriter.createQueue(session),
+                admissionControl.createSdpBucket(), admissionControl.createCandidateBucket()));
+        sessionDirectory.initialize(sessionId, uid, 0);
+        return session;
+    }
+
+    private static TextMessage frame(String payload) {
+        return new TextMessage(payload);
+    }
+
+    private static void awaitPayloads(RecordingWebSocketSession session, String... payloads) {
+        long deadline = System.currentTimeMillis() + AWAIT_MS;
+        while (session.getSentMessages().size() < payloads.length && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        List<Object> sent = new ArrayList<>();
+        for (WebSocketMessage<?> message : session.getSentMessages()) {
+            sent.add(message.getPayload());
+        }
+        assertEquals(List.of((Object[]) payloads), sent);
+    }
+}
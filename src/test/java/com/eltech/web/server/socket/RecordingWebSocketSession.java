@@ -0,0 +1,154 @@
+package com.eltech.web.server.socket;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Session without any io, that keeps sent messages and the status, it was closed with
+ */
+class RecordingWebSocketSession implements WebSocketSession {
+    private final String id;
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final Queue<WebSocketMessage<?>> sentMessages = new ConcurrentLinkedQueue<>();
+    private volatile boolean open = true;
+    private volatile CloseStatus closeStatus = null;
+    // sends wait for it, as for a receiver, that stopped reading
+    private volatile CountDownLatch sendGate = null;
+
+    RecordingWebSocketSession(String id) {
+        this.id = id;
+    }
+
+    /**
+     * Creates session, authenticated as given uid at handshake
+     */
+    RecordingWebSocketSession(String id, String uid) {
+        this(id);
+        attributes.put(ChatUserHandshakeInterceptor.ATTRIBUTE_UID, uid);
+    }
+
+    // connection is lost without close event, as with a half-open tcp connection
+    void drop() {
+        open = false;
+    }
+
+    // sends block, until the gate is opened
+    void blockSends(CountDownLatch gate) {
+        sendGate = gate;
+    }
+
+    Queue<WebSocketMessage<?>> getSentMessages() {
+        return sentMessages;
+    }
+
+    // status, the server closed session with, or null, if it did not close it
+    CloseStatus getCloseStatus() {
+        return closeStatus;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public URI getUri() {
+        return URI.create("ws://localhost/socket");
+    }
+
+    @Override
+    public HttpHeaders getHandshakeHeaders() {
+        return new HttpHeaders();
+    }
+
+    @Override
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    @Override
+    public Principal getPrincipal() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getAcceptedProtocol() {
+        return null;
+    }
+
+    @Override
+    public void setTextMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getTextMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+    }
+
+    @Override
+    public int getBinaryMessageSizeLimit() {
+        return Integer.MAX_VALUE;
+    }
+
+    @Override
+    public List<WebSocketExtension> getExtensions() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) {
+        CountDownLatch gate = sendGate;
+        if (gate != null) {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        sentMessages.add(message);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        close(CloseStatus.NORMAL);
+    }
+
+    @Override
+    public void close(CloseStatus status) {
+        open = false;
+        closeStatus = status;
+    }
+}
@@ -0,0 +1,54 @@
+package com.eltech.web.server.socket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class RelayFrameTest {
+    private static final String SENDER_UID = UUID.randomUUID().toString();
+    private static final String TARGET_UID = UUID.randomUUID().toString();
+
+    @Test
+    void everySessionGetsWholeBinaryFrame() {
+        BinaryMessage message = new BinaryMessage(BinarySignalingFrame.encode(BinarySignalingFrame.TYPE_CANDIDATE,
+                UUID.fromString(SENDER_UID), UUID.fromString(TARGET_UID), "{\"candidate\":\"c1\"}".getBytes(StandardCharsets.UTF_8)));
+        int length = message.getPayloadLength();
+        RelayFrame frame = new RelayFrame(message);
+
+        WebSocketMessage<?> first = frame.forProtocol(true);
+        // writer of the first session consumes its buffer
+        ((BinaryMessage) first).getPayload().position(length);
+        WebSocketMessage<?> second = frame.forProtocol(true);
+
+        assertNotSame(first, second);
+        assertEquals(length, second.getPayloadLength());
+        assertEquals(length, message.getPayloadLength());
+        TextMessage text = (TextMessage) frame.forProtocol(false);
+        assertEquals("{\"type\":\"candidate\",\"payload\":{\"senderUid\":\"" + SENDER_UID + "\",\"targetUid\":\"" + TARGET_UID
+                + "\",\"candidate\":\"c1\"}}", text.getPayload());
+    }
+
+    @Test
+    void convertedFrameIsCopiedForEverySession() {
+        TextMessage message = new TextMessage("{\"type\":\"candidate\",\"payload\":{\"senderUid\":\"" + SENDER_UID
+                + "\",\"targetUid\":\"" + TARGET_UID + "\",\"candidate\":\"c1\"}}");
+        RelayFrame frame = new RelayFrame(message);
+
+        BinaryMessage first = (BinaryMessage) frame.forProtocol(true);
+        int length = first.getPayloadLength();
+        first.getPayload().position(length);
+        BinaryMessage second = (BinaryMessage) frame.forProtocol(true);
+
+        assertEquals(length, second.getPayloadLength());
+        assertEquals(ByteBuffer.wrap(BinarySignalingFrame.encode(BinarySignalingFrame.TYPE_CANDIDATE, UUID.fromString(SENDER_UID),
+                UUID.fromString(TARGET_UID), "{\"candidate\":\"c1\"}".getBytes(StandardCharsets.UTF_8))), second.getPayload());
+    }
+}
@@ -0,0 +1,374 @@
+package com.eltech.web.server.socket;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.log.EventLogProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Connects and drops thousands of sessions with short lifecycle timeouts and checks,
+ * that every session is released and every due timeout fires exactly once.
+ * The churn test runs a million session lifecycles and checks, that nothing is retained, once they are gone.
+ */
+class SessionReaperSoakTest {
+    private static final int SESSION_COUNT = 2000;
+    private static final long AWAIT_MS = 10000;
+    private static final int CHURN_THREADS = 8;
+    private static final int WARMUP_CYCLES = 100000;
+    private static final int SOAK_CYCLES = 1000000;
+    // a leak of even 32 bytes per cycle would exceed this
+    private static final long MAX_HEAP_GROWTH = 32L * 1024 * 1024;
+
+    private SignalingProperties properties;
+    private SignalingMetrics metrics;
+    private EventLog eventLog;
+    private SessionDirectory sessionDirectory;
+    private OutboundWriter outboundWriter;
+    private AdmissionControl admissionControl;
+    private SessionReaper sessionReaper;
+
+    @BeforeEach
+    void setUp() {
+        properties = new SignalingProperties();
+        SignalingProperties.Lifecycle lifecycle = properties.getLifecycle();
+        lifecycle.setTickMs(10);
+        lifecycle.setWheelSize(64);
+        lifecycle.setHandshakeTimeoutMs(300);
+        lifecycle.setSweepIntervalMs(100);
+        lifecycle.setHeartbeatIntervalMs(0);
+
+        EventLogProperties eventLogProperties = new EventLogProperties();
+        eventLogProperties.setEnabled(false);
+        eventLog = new EventLog(eventLogProperties);
+        metrics = new SignalingMetrics();
+        sessionDirectory = new SessionDirectory();
+        outboundWriter = new OutboundWriter(properties, metrics);
+        admissionControl = new AdmissionControl(sessionDirectory, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (sessionReaper != null) {
+            sessionReaper.shutdown();
+        }
+        outboundWriter.shutdown();
+        eventLog.shutdown();
+    }
+
+    @Test
+    void uninitializedSessionsAreReleasedAfterHandshakeTimeout() {
+        startReaper();
+        List<RecordingWebSocketSession> sessions = connect(SESSION_COUNT);
+        assertEquals(SESSION_COUNT, sessionDirectory.getUninitializedCount());
+
+        awaitUntil(() -> sessionDirectory.getSessionCount() == 0);
+        awaitUntil(() -> sessions.stream().noneMatch(RecordingWebSocketSession::isOpen));
+        for (RecordingWebSocketSession session : sessions) {
+            assertEquals(CloseStatus.POLICY_VIOLATION.getCode(), session.getCloseStatus().getCode());
+        }
+    }
+
+    @Test
+    void sessionsWithLostCloseEventAreSwept() {
+        // handshake timeout would never fire during the test, only the sweep can release sessions
+        properties.getLifecycle().setHandshakeTimeoutMs(TimeUnit.MINUTES.toMillis(10));
+        startReaper();
+        List<RecordingWebSocketSession> sessions = connect(SESSION_COUNT);
+        for (int i = 0; i < SESSION_COUNT / 2; i++) {
+            initialize(sessions.get(i));
+        }
+        assertEquals(SESSION_COUNT / 2, sessionDirectory.getInitializedCount());
+
+        sessions.forEach(RecordingWebSocketSession::drop);
+        awaitUntil(() -> sessionDirectory.getSessionCount() == 0);
+        assertEquals(0, sessionDirectory.getUidCount());
+    }
+
+    @Test
+    void idleSessionsAreReleasedAndActiveOnesAreKept() throws InterruptedException {
+        properties.getLifecycle().setIdleTimeoutMs(300);
+        startReaper();
+        List<RecordingWebSocketSession> sessions = connect(SESSION_COUNT);
+        sessions.forEach(this::initialize);
+        RecordingWebSocketSession activeSession = sessions.get(0);
+
+        // one session keeps sending frames for twice the idle timeout
+        long activeUntil = System.currentTimeMillis() + 600;
+        while (System.currentTimeMillis() < activeUntil) {
+            sessionDirectory.getBySessionId(activeSession.getId()).touch();
+            Thread.sleep(20);
+        }
+
+        awaitUntil(() -> sessionDirectory.getSessionCount() == 1);
+        assertTrue(activeSession.isOpen());
+        assertEquals(1, sessionDirectory.getInitializedCount());
+        awaitUntil(() -> sessions.stream().filter(RecordingWebSocketSession::isOpen).count() == 1);
+    }
+
+    @Test
+    void sessionsClosedByClientDoNotFireTimeouts() throws InterruptedException {
+        startReaper();
+        int threadCount = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        List<RecordingWebSocketSession> sessions = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(threadCount);
+        AtomicInteger nextId = new AtomicInteger();
+        for (int thread = 0; thread < threadCount; thread++) {
+            executor.execute(() -> {
+                // sessions come and go, half of them complete the handshake first
+                for (int i = 0; i < SESSION_COUNT; i++) {
+                    int id = nextId.incrementAndGet();
+                    RecordingWebSocketSession session = new RecordingWebSocketSession("s" + id, "u" + (id % 500));
+                    PeerSession peer = connect(session);
+                    if (id % 2 == 0) {
+                        initialize(session);
+                    }
+                    sessionDirectory.remove(peer.getSessionId());
+                    synchronized (sessions) {
+                        sessions.add(session);
+                    }
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(AWAIT_MS, TimeUnit.MILLISECONDS));
+        executor.shutdown();
+
+        assertEquals(0, sessionDirectory.getSessionCount());
+        assertEquals(0, sessionDirectory.getUidCount());
+        // every pending timeout would have fired by now, but all of them were cancelled on release
+        Thread.sleep(2 * properties.getLifecycle().getHandshakeTimeoutMs());
+        for (RecordingWebSocketSession session : sessions) {
+            assertNull(session.getCloseStatus());
+        }
+    }
+
+    @Test
+    void stalledReceiverIsClosedWithoutFurtherFrames() {
+        properties.getOutbound().setWriterThreads(1);
+        properties.getOutbound().setSendTimeLimitMs(200);
+        outboundWriter.shutdown();
+        outboundWriter = new OutboundWriter(properties, metrics);
+        startReaper();
+        CountDownLatch gate = new CountDownLatch(1);
+        try {
+            RecordingWebSocketSession stalled = new RecordingWebSocketSession("stalled", "u1");
+            connect(stalled);
+            initialize(stalled);
+            stalled.blockSends(gate);
+
+            // the only writer thread is stuck in the send, no frame is offered after it, so only the reaper can notice
+            sessionDirectory.sendToSession("stalled", new TextMessage("{}"), false);
+            awaitUntil(() -> sessionDirectory.getSessionCount() == 0);
+            awaitUntil(() -> !stalled.isOpen());
+            assertEquals(CloseStatus.SESSION_NOT_RELIABLE.getCode(), stalled.getCloseStatus().getCode());
+            assertEquals(1, sessionReaper.getStalledEvictionCount());
+        } finally {
+            gate.countDown();
+        }
+    }
+
+        @Test
+    void churnKeepsRetainedStateBounded() throws InterruptedException {
+        // handshake timeouts never fire, each one is cancelled on initialization or close and dropped by the wheel
+        properties.getLifecycle().setHandshakeTimeoutMs(TimeUnit.MINUTES.toMillis(10));
+        properties.getPendingFrames().setTtlMs(200);
+        startReaper();
+        CallPinRegistry callPinRegistry = new CallPinRegistry(sessionDirectory, sessionReaper, properties);
+        PendingFrameBuffer pendingFrameBuffer = new PendingFrameBuffer(sessionDirectory, sessionReaper, properties);
+        TimerWheel timerWheel = sessionReaper.getTimerWheel();
+        // sweep, purges of pending frames and of idle pins
+        int idleTimeoutCount = timerWheel.getTimeoutCount();
+        BooleanSupplier released = () -> sessionDirectory.getSessionCount() == 0 && sessionDirectory.getUidCount() == 0
+                && callPinRegistry.getPinCount() == 0 && callPinRegistry.getPinnedSessionCount() == 0
+                && pendingFrameBuffer.getTargetCount() == 0 && pendingFrameBuffer.getBufferedBytes() == 0
+                && timerWheel.getTimeoutCount() == idleTimeoutCount;
+
+        churn(0, WARMUP_CYCLES, callPinRegistry, pendingFrameBuffer);
+        awaitUntil(released);
+        long baselineHeap = usedHeapAfterGc();
+
+        long startTime = System.currentTimeMillis();
+        int[] maxRetained = churn(WARMUP_CYCLES, SOAK_CYCLES, callPinRegistry, pendingFrameBuffer);
+        long soakMs = System.currentTimeMillis() - startTime;
+
+        // each churn thread holds at most one session and its pin at a time, pending frames are kept for 64 offline uids,
+        // a session, that is being initialized, is counted in both maps for a moment
+        assertTrue(maxRetained[0] <= 2 * CHURN_THREADS, "sessions retained: " + maxRetained[0]);
+        assertTrue(maxRetained[1] <= CHURN_THREADS, "pins retained: " + maxRetained[1]);
+        assertTrue(maxRetained[2] <= 64, "pending frame targets retained: " + maxRetained[2]);
+        // cancelled timeouts are dropped within a round of the wheel, so they are bounded by the rate of churn, not its length
+        long wheelRoundMs = properties.getLifecycle().getTickMs() * properties.getLifecycle().getWheelSize();
+        long maxTimeouts = 2 * (long) SOAK_CYCLES * (wheelRoundMs + AWAIT_MS / 100) / Math.max(1, soakMs) + idleTimeoutCount;
+        assertTrue(maxRetained[3] <= maxTimeouts, "timeouts retained: " + maxRetained[3] + ", expected at most " + maxTimeouts);
+
+        awaitUntil(released);
+        long heapGrowth = usedHeapAfterGc() - baselineHeap;
+        assertTrue(heapGrowth < MAX_HEAP_GROWTH, "heap grew by " + heapGrowth + " bytes");
+    }
+
+        @Test
+    void timeoutsFireOnceAndNotBeforeDeadline() throws InterruptedException {
+        TimerWheel timerWheel = new TimerWheel("test-wheel", 10, 16, eventLog);
+        try {
+            int timeoutCount = 20000;
+            AtomicInteger firedCount = new AtomicInteger();
+            AtomicInteger cancelledFiredCount = new AtomicInteger();
+            AtomicInteger earlyCount = new AtomicInteger();
+            AtomicLong maxLateMs = new AtomicLong();
+            CountDownLatch fired = new CountDownLatch(timeoutCount / 2);
+            for (int i = 0; i < timeoutCount; i++) {
+                // delays span many rounds of the 160 ms wheel
+                long delayMs = ThreadLocalRandom.current().nextLong(0, 1000);
+                long deadline = System.currentTimeMillis() + delayMs;
+                boolean cancel = i % 2 == 1;
+                TimerWheel.Timeout timeout = timerWheel.schedule(() -> {
+                    long now = System.currentTimeMillis();
+                    if (now < deadline) {
+                        earlyCount.incrementAndGet();
+                    }
+                    maxLateMs.accumulateAndGet(now - deadline, Math::max);
+                    if (cancel) {
+                        cancelledFiredCount.incrementAndGet();
+                    }
+                    firedCount.incrementAndGet();
+                    fired.countDown();
+                }, delayMs);
+                if (cancel) {
+                    timeout.cancel();
+                }
+            }
+
+            assertTrue(fired.await(AWAIT_MS, TimeUnit.MILLISECONDS));
+            Thread.sleep(200);
+            assertEquals(timeoutCount / 2, firedCount.get());
+            assertEquals(0, cancelledFiredCount.get());
+            assertEquals(0, earlyCount.get());
+            assertTrue(maxLateMs.get() < AWAIT_MS, "timeouts fired " + maxLateMs.get() + " ms late");
+        } finally {
+            timerWheel.stop();
+        }
+    }
+
+    @Test
+    void failingTimeoutDoesNotStopWheel() throws InterruptedException {
+        TimerWheel timerWheel = new TimerWheel("test-wheel", 10, 16, eventLog);
+        try {
+            CountDownLatch fired = new CountDownLatch(1);
+            timerWheel.schedule(() -> {
+                throw new IllegalStateException("expected by test");
+            }, 10);
+            timerWheel.schedule(fired::countDown, 50);
+            assertTrue(fired.await(AWAIT_MS, TimeUnit.MILLISECONDS));
+        } finally {
+            timerWheel.stop();
+        }
+    }
+
+    /**
+     * Connects, initializes and closes sessions on several threads, each session pins a call and keeps a frame
+     * for an offline uid, as a short call to a peer, that never connects, would
+     * @return peaks of [sessions, pins, pending frame targets, timer wheel timeouts], sampled during the churn
+     */
+    private int[] churn(int firstId, int cycles, CallPinRegistry callPinRegistry, PendingFrameBuffer pendingFrameBuffer)
+            throws InterruptedException {
+        TextMessage candidate = new TextMessage("{\"type\":\"candidate\",\"data\":{}}");
+        ExecutorService executor = Executors.newFixedThreadPool(CHURN_THREADS);
+        CountDownLatch done = new CountDownLatch(CHURN_THREADS);
+        AtomicInteger nextId = new AtomicInteger(firstId);
+        for (int thread = 0; thread < CHURN_THREADS; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < cycles / CHURN_THREADS; i++) {
+                    int id = nextId.incrementAndGet();
+                    RecordingWebSocketSession session = new RecordingWebSocketSession("s" + id, "u" + (id % 500));
+                    PeerSession peer = connect(session);
+                    initialize(session);
+                    callPinRegistry.onRelayed(peer, "u" + ((id + 1) % 500), false);
+                    pendingFrameBuffer.add("offline" + (id % 64), candidate, true);
+                    sessionDirectory.remove(peer.getSessionId());
+                }
+                done.countDown();
+            });
+        }
+        executor.shutdown();
+
+        TimerWheel timerWheel = sessionReaper.getTimerWheel();
+        int[] maxRetained = new int[4];
+        do {
+            maxRetained[0] = Math.max(maxRetained[0], sessionDirectory.getSessionCount());
+            maxRetained[1] = Math.max(maxRetained[1], callPinRegistry.getPinCount());
+            maxRetained[2] = Math.max(maxRetained[2], pendingFrameBuffer.getTargetCount());
+            maxRetained[3] = Math.max(maxRetained[3], timerWheel.getTimeoutCount());
+        } while (!done.await(5, TimeUnit.MILLISECONDS));
+        return maxRetained;
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private void startReaper() {
+        sessionReaper = new SessionReaper(sessionDirectory, properties, metrics, eventLog);
+    }
+
+    private List<RecordingWebSocketSession> connect(int count) {
+        List<RecordingWebSocketSession> sessions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            RecordingWebSocketSession session = new RecordingWebSocketSession("s" + i, "u" + (i % 500));
+            connect(session);
+            sessions.add(session);
+        }
+        return sessions;
+    }
+
+    // same as SocketHandler.afterConnectionEstablished
+    private PeerSession connect(RecordingWebSocketSession session) {
+        PeerSession peer = sessionDirectory.addUninitialized(new PeerSession(session, outboundWriter.createQueue(session),
+                admissionControl.createSdpBucket(), admissionControl.createCandidateBucket()));
+        sessionReaper.onConnected(peer);
+        return peer;
+    }
+
+    // same as SocketHandler on peer_init
+    private void initialize(RecordingWebSocketSession session) {
+        String uid = ChatUserHandshakeInterceptor.getBoundUid(session.getAttributes());
+        PeerSession peer = sessionDirectory.initialize(session.getId(), uid, 0);
+        if (peer != null && peer.isInitialized()) {
+            sessionReaper.onInitialized(peer);
+        }
+    }
+
+    private static void awaitUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + AWAIT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition was not met in " + AWAIT_MS + " ms");
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.eltech.web.server.user.cache;
+
+import com.eltech.web.server.user.entity.ChatUser;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UserCacheTest {
+    @Test
+    void recentlyUsedEntriesSurviveEviction() {
+        UserCacheProperties properties = new UserCacheProperties();
+        properties.setMaxEntries(100);
+        UserCache userCache = new UserCache(properties, new StaticListableBeanFactory().getBeanProvider(UserCacheBroadcast.class));
+        AtomicInteger loadCount = new AtomicInteger();
+
+        for (int i = 0; i < 100; i++) {
+            userCache.getByUid("uid" + i, uid -> load(uid, loadCount));
+        }
+        // first ten users stay in use, while the cache fills up
+        for (int i = 0; i < 10; i++) {
+            userCache.getByUid("uid" + i, uid -> load(uid, loadCount));
+        }
+        userCache.getByUid("uid100", uid -> load(uid, loadCount));
+        assertEquals(101, loadCount.get());
+        // at least the least recently used half is evicted
+        assertTrue(userCache.getEvictionCount() >= 50);
+
+        for (int i = 0; i < 10; i++) {
+            userCache.getByUid("uid" + i, uid -> load(uid, loadCount));
+        }
+        assertEquals(101, loadCount.get());
+    }
+
+    @Test
+    void usernameLookupsKeepOnlyMissingUsers() {
+        UserCache userCache = new UserCache(new UserCacheProperties(),
+                new StaticListableBeanFactory().getBeanProvider(UserCacheBroadcast.class));
+        AtomicInteger loadCount = new AtomicInteger();
+
+        // found users are entities, that the caller may modify, so they are loaded every time
+        userCache.loadByUsername("alice", username -> load(username, loadCount));
+        userCache.loadByUsername("alice", username -> load(username, loadCount));
+        assertEquals(2, loadCount.get());
+        // only the entry by uid is kept
+        assertEquals(1, userCache.getEntryCount());
+
+        assertNull(userCache.loadByUsername("nobody", username -> null));
+        assertNull(userCache.loadByUsername("nobody", username -> load(username, loadCount)));
+        assertEquals(2, loadCount.get());
+        assertEquals(1, userCache.getNegativeHitCount());
+    }
+
+    private static ChatUser load(String key, AtomicInteger loadCount) {
+        loadCount.incrementAndGet();
+        return new ChatUser(key, "user-" + key, "password");
+    }
+}
@@ -0,0 +1,151 @@
+package com.eltech.web.server.user.controller;
+
+import com.eltech.web.server.log.EventLog;
+import com.eltech.web.server.log.EventLogProperties;
+import com.eltech.web.server.socket.GroupMemberCache;
+import com.eltech.web.server.user.cache.UserCache;
+import com.eltech.web.server.user.cache.UserCacheBroadcast;
+import com.eltech.web.server.user.cache.UserCacheProperties;
+import com.eltech.web.server.user.entity.ChatUser;
+import com.eltech.web.server.user.entity.Dialog;
+import com.eltech.web.server.user.entity.GroupChat;
+import com.eltech.web.server.user.repo.GroupChatRepository;
+import com.eltech.web.server.user.repo.UserRepository;
+import com.eltech.web.server.user.service.ChatActivityBuffer;
+import com.eltech.web.server.user.service.ChatActivityProperties;
+import com.eltech.web.server.user.service.DialogService;
+import com.eltech.web.server.user.service.GroupChatService;
+import com.eltech.web.server.user.service.UserResolver;
+import com.eltech.web.server.user.service.UserService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.factory.PasswordEncoderFactories;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Counts statements of /api/chat/list on an embedded database, they must not depend on count of chats of the user.
+ * Only count of statements is checked, rows, that each statement reads, are not.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class ChatListQueryCountTest {
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private GroupChatRepository groupChatRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private EventLog eventLog;
+    private ChatActivityBuffer activityBuffer;
+    private ChatController chatController;
+    private Statistics statistics;
+
+    private ChatUser owner;
+    private final List<GroupChat> groupChats = new ArrayList<>();
+    private long time = 0;
+
+    @BeforeEach
+    void setUp() {
+        EventLogProperties eventLogProperties = new EventLogProperties();
+        eventLogProperties.setEnabled(false);
+        eventLog = new EventLog(eventLogProperties);
+        activityBuffer = new ChatActivityBuffer(new ChatActivityProperties(), jdbcTemplate, eventLog);
+        UserCache userCache = new UserCache(new UserCacheProperties(),
+                new StaticListableBeanFactory().getBeanProvider(UserCacheBroadcast.class));
+        UserService userService = new UserService(userRepository, groupChatRepository,
+                PasswordEncoderFactories.createDelegatingPasswordEncoder(), eventPublisher, userCache);
+        GroupChatService groupChatService = new GroupChatService(groupChatRepository, eventPublisher, activityBuffer);
+        chatController = new ChatController(userService, new DialogService(userService, eventPublisher, activityBuffer),
+                groupChatService, new UserResolver(userService), activityBuffer, new GroupMemberCache(groupChatService));
+
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        owner = entityManager.persist(newUser());
+    }
+
+    @AfterEach
+    void tearDown() {
+        activityBuffer.shutdown();
+        eventLog.shutdown();
+    }
+
+    @Test
+    void fullListIssuesSameStatementsForAnyChatCount() {
+        addChats(2);
+        long fewChatsStatements = countListStatements(null, null, null, 4);
+
+        addChats(30);
+        long manyChatsStatements = countListStatements(null, null, null, 64);
+
+        // dialogs and group chats are read by one query each
+        assertEquals(2, fewChatsStatements);
+        assertEquals(fewChatsStatements, manyChatsStatements);
+    }
+
+    @Test
+    void pageIssuesSameStatementsForAnyChatCount() {
+        addChats(5);
+        long fewChatsStatements = countListStatements(4, null, null, 4);
+
+        addChats(60);
+        long firstPageStatements = countListStatements(50, null, null, 50);
+        // 61 chats are older than this one
+        GroupChat cursor = groupChats.get(30);
+        long deepPageStatements = countListStatements(50, cursor.getLastActivityTime(), ChatController.ChatId.ofGroupChat(cursor.getId()), 50);
+
+        // page keys, then dialogs and group chats of the page by ids
+        assertEquals(3, fewChatsStatements);
+        assertEquals(fewChatsStatements, firstPageStatements);
+        assertEquals(fewChatsStatements, deepPageStatements);
+    }
+
+    private long countListStatements(Integer limit, Long beforeTime, String beforeChatId, int expectedChatCount) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        assertEquals(expectedChatCount, chatController.listChats(owner, limit, beforeTime, beforeChatId).size());
+        return statistics.getPrepareStatementCount();
+    }
+
+    // adds a dialog and a group chat with two other members per count
+    private void addChats(int count) {
+        for (int i = 0; i < count; i++) {
+            ChatUser target = entityManager.persist(newUser());
+            Dialog dialog = new Dialog(owner, target.getUid());
+            dialog.setLastActivityTime(++time);
+            entityManager.persist(dialog);
+
+            GroupChat groupChat = new GroupChat("chat" + time, owner);
+            groupChat.setLastActivityTime(++time);
+            groupChat.addUser(owner);
+            groupChat.addUser(target);
+            groupChat.addUser(entityManager.persist(newUser()));
+            groupChats.add(entityManager.persist(groupChat));
+        }
+    }
+
+    private static ChatUser newUser() {
+        String uid = UUID.randomUUID().toString();
+        return new ChatUser(uid, "user-" + uid, "password");
+    }
+}